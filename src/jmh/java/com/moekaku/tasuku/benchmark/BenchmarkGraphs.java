@@ -0,0 +1,65 @@
+package com.moekaku.tasuku.benchmark;
+
+import com.moekaku.tasuku.Workspace;
+import org.slf4j.helpers.NOPLoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.FileSystem;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+class BenchmarkGraphs {
+    private BenchmarkGraphs() {
+        // NO-OP
+    }
+
+    static String getTaskName(int index) {
+        return "f" + index + ".txt";
+    }
+
+    static List<String> getDependencies(int index) {
+        if (index == 0) {
+            return Collections.emptyList();
+        } else if (index == 1 || index / 2 == index - 1) {
+            return Collections.singletonList(getTaskName(index - 1));
+        } else {
+            return Arrays.asList(getTaskName(index - 1), getTaskName(index / 2));
+        }
+    }
+
+    static List<List<String>> getAllDependencies(int taskCount) {
+        List<List<String>> dependencies = new ArrayList<>(taskCount);
+        for (int i = 0; i < taskCount; i++) {
+            dependencies.add(getDependencies(i));
+        }
+        return dependencies;
+    }
+
+    static Workspace newWorkspace(FileSystem fileSystem, String rootPath) {
+        return Workspace.builder()
+                .fileSystem(fileSystem)
+                .root(Workspace.DEFAULT_ROOT, rootPath)
+                .loggerFactory(new NOPLoggerFactory())
+                .build();
+    }
+
+    static void addFileTasks(Workspace workspace, int taskCount) {
+        for (int i = 0; i < taskCount; i++) {
+            workspace.newFileTask(getTaskName(i), getDependencies(i), null);
+        }
+    }
+
+    static void writeUpToDateFiles(Workspace workspace, int taskCount) throws IOException {
+        long baseTime = System.currentTimeMillis() - 1000L * taskCount;
+        for (int i = 0; i < taskCount; i++) {
+            Path path = workspace.getFilePath(getTaskName(i));
+            Files.write(path, new byte[]{(byte) i});
+            Files.setLastModifiedTime(path, FileTime.fromMillis(baseTime + 1000L * i));
+        }
+    }
+}
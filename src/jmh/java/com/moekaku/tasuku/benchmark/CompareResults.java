@@ -0,0 +1,142 @@
+package com.moekaku.tasuku.benchmark;
+
+import com.google.common.base.Preconditions;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class CompareResults {
+    private static final double DEFAULT_TOLERANCE = 0.10;
+
+    public static void main(String[] args) throws IOException {
+        Preconditions.checkArgument(args.length == 2 || args.length == 3,
+                "Usage: CompareResults <baseline.csv> <results.csv> [tolerance]");
+        Map<String, Result> baseline = read(Paths.get(args[0]));
+        Map<String, Result> results = read(Paths.get(args[1]));
+        double tolerance = args.length == 3 ? Double.parseDouble(args[2]) : DEFAULT_TOLERANCE;
+
+        int regressionCount = 0;
+        System.out.println(String.format("%-100s %22s %22s %-10s %8s", "Benchmark", "Baseline", "Current", "Unit", "Ratio"));
+        for (Map.Entry<String, Result> entry : results.entrySet()) {
+            Result result = entry.getValue();
+            Result base = baseline.get(entry.getKey());
+            if (base == null) {
+                System.out.println(String.format("%-100s %22s %22s %-10s %8s",
+                        entry.getKey(), "-", result, result.unit, "new"));
+                continue;
+            }
+            double ratio = result.isThroughput() ? base.score / result.score : result.score / base.score;
+            // A slowdown only counts when the confidence intervals of the two scores do not overlap, so
+            // that noise within the reported error never fails the comparison.
+            boolean regressed = ratio > 1 + tolerance
+                    && Math.abs(result.score - base.score) > base.error + result.error;
+            if (regressed) {
+                regressionCount++;
+            }
+            System.out.println(String.format("%-100s %22s %22s %-10s %8.2f%s",
+                    entry.getKey(), base, result, result.unit, ratio, regressed ? " REGRESSED" : ""));
+        }
+        for (String key : baseline.keySet()) {
+            if (!results.containsKey(key)) {
+                System.out.println(String.format("%-100s %22s %22s", key, baseline.get(key), "missing"));
+            }
+        }
+        if (regressionCount > 0) {
+            System.out.println(regressionCount + " benchmark(s) regressed by more than "
+                    + Math.round(tolerance * 100) + "%.");
+            System.exit(1);
+        }
+    }
+
+    private static Map<String, Result> read(Path file) throws IOException {
+        List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+        Preconditions.checkArgument(!lines.isEmpty(), "File " + file + " is empty.");
+        List<String> header = parseLine(lines.get(0));
+        int benchmarkColumn = header.indexOf("Benchmark");
+        int modeColumn = header.indexOf("Mode");
+        int scoreColumn = header.indexOf("Score");
+        int errorColumn = header.indexOf("Score Error (99.9%)");
+        int unitColumn = header.indexOf("Unit");
+        Preconditions.checkArgument(benchmarkColumn >= 0 && modeColumn >= 0 && scoreColumn >= 0 && errorColumn >= 0
+                        && unitColumn >= 0,
+                "File " + file + " is not a JMH CSV result file.");
+
+        Map<String, Result> results = new LinkedHashMap<>();
+        for (int i = 1; i < lines.size(); i++) {
+            if (lines.get(i).isEmpty()) {
+                continue;
+            }
+            List<String> fields = parseLine(lines.get(i));
+            StringBuilder key = new StringBuilder(fields.get(benchmarkColumn));
+            for (int j = 0; j < header.size(); j++) {
+                if (header.get(j).startsWith("Param: ") && j < fields.size() && !fields.get(j).isEmpty()) {
+                    key.append(' ').append(header.get(j).substring("Param: ".length()))
+                            .append('=').append(fields.get(j));
+                }
+            }
+            double error = Double.parseDouble(fields.get(errorColumn));
+            results.put(key.toString(), new Result(fields.get(modeColumn),
+                    fields.get(benchmarkColumn).contains(":"), Double.parseDouble(fields.get(scoreColumn)),
+                    Double.isNaN(error) ? 0 : error, fields.get(unitColumn)));
+        }
+        return results;
+    }
+
+    private static List<String> parseLine(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == '"') {
+                if (quoted && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else {
+                    quoted = !quoted;
+                }
+            } else if (c == ',' && !quoted) {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+
+    private static class Result {
+        final String mode;
+        final boolean secondary;
+        final double score;
+        final double error;
+        final String unit;
+
+        Result(String mode, boolean secondary, double score, double error, String unit) {
+            this.mode = mode;
+            this.secondary = secondary;
+            this.score = score;
+            this.error = error;
+            this.unit = unit;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%.3f +- %.3f", score, error);
+        }
+
+        // Secondary results, such as the bytes per task of GraphHeapBenchmark, count events, so lower is better
+        // in every mode.
+        boolean isThroughput() {
+            return mode.equals("thrpt") && !secondary;
+        }
+    }
+}
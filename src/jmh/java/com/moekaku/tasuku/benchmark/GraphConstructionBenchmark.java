@@ -0,0 +1,83 @@
+package com.moekaku.tasuku.benchmark;
+
+import com.google.common.jimfs.Configuration;
+import com.google.common.jimfs.Jimfs;
+import com.moekaku.tasuku.GraphBuilder;
+import com.moekaku.tasuku.Workspace;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.FileSystem;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 20)
+@Fork(value = 3, jvmArgsAppend = {"-Xms3g", "-Xmx3g"})
+public class GraphConstructionBenchmark {
+    @Param({"1000", "10000", "100000", "1000000"})
+    public int taskCount;
+
+    private FileSystem fileSystem;
+    private List<String> names;
+    private List<List<String>> dependencies;
+
+    @Setup
+    public void setUp() {
+        fileSystem = Jimfs.newFileSystem(Configuration.unix());
+        names = new ArrayList<>(taskCount);
+        for (int i = 0; i < taskCount; i++) {
+            names.add(BenchmarkGraphs.getTaskName(i));
+        }
+        dependencies = BenchmarkGraphs.getAllDependencies(taskCount);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        fileSystem.close();
+    }
+
+    @Benchmark
+    public Workspace newFileTasks() {
+        Workspace workspace = BenchmarkGraphs.newWorkspace(fileSystem, "/");
+        for (int i = 0; i < taskCount; i++) {
+            workspace.newFileTask(names.get(i), dependencies.get(i), null);
+        }
+        return workspace;
+    }
+
+    @Benchmark
+    public Workspace newCommandTasks() {
+        Workspace workspace = BenchmarkGraphs.newWorkspace(fileSystem, "/");
+        for (int i = 0; i < taskCount; i++) {
+            workspace.newCommandTask(names.get(i), dependencies.get(i), null);
+        }
+        return workspace;
+    }
+
+    @Benchmark
+    public Workspace graphBuilderFileTasks() {
+        Workspace workspace = BenchmarkGraphs.newWorkspace(fileSystem, "/");
+        GraphBuilder builder = workspace.newGraphBuilder();
+        for (int i = 0; i < taskCount; i++) {
+            builder.fileTask(names.get(i), dependencies.get(i), null);
+        }
+        builder.publish();
+        return workspace;
+    }
+}
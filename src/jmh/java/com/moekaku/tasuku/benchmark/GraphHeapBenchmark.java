@@ -0,0 +1,111 @@
+package com.moekaku.tasuku.benchmark;
+
+import com.google.common.jimfs.Configuration;
+import com.google.common.jimfs.Jimfs;
+import com.moekaku.tasuku.Workspace;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.FileSystem;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// JMH only reports aux counters in the throughput and average time modes, and it adds them up over the
+// measurement iterations. Iterations are far shorter than one invocation, so the single measured iteration
+// builds exactly one graph. The heap is measured around it in the iteration fixtures.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 1, timeUnit = TimeUnit.MILLISECONDS)
+@Measurement(iterations = 1, time = 1, timeUnit = TimeUnit.MILLISECONDS)
+@Fork(value = 1, jvmArgs = {"-Xms4g", "-Xmx4g"})
+public class GraphHeapBenchmark {
+    @Param({"100000", "1000000"})
+    public int taskCount;
+
+    private FileSystem fileSystem;
+    private List<String> names;
+    private List<List<String>> dependencies;
+    private List<List<String>> inputs;
+    private long heapBefore;
+    private Workspace workspace;
+    private long nodeCount;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class HeapUsage {
+        public long bytesPerTask;
+    }
+
+    @Setup
+    public void setUp() {
+        fileSystem = Jimfs.newFileSystem(Configuration.unix());
+        names = new ArrayList<>(taskCount);
+        inputs = new ArrayList<>(taskCount);
+        for (int i = 0; i < taskCount; i++) {
+            names.add(BenchmarkGraphs.getTaskName(i));
+            inputs.add(Collections.singletonList("data/input" + i + ".txt"));
+        }
+        dependencies = BenchmarkGraphs.getAllDependencies(taskCount);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        fileSystem.close();
+    }
+
+    @Setup(Level.Iteration)
+    public void measureHeapBefore() {
+        workspace = null;
+        heapBefore = usedHeap();
+    }
+
+    @TearDown(Level.Iteration)
+    public void measureHeapAfter(HeapUsage heapUsage) {
+        heapUsage.bytesPerTask = (usedHeap() - heapBefore) / nodeCount;
+        workspace = null;
+    }
+
+    @Benchmark
+    public void fileTasks() {
+        workspace = BenchmarkGraphs.newWorkspace(fileSystem, "/");
+        for (int i = 0; i < taskCount; i++) {
+            workspace.newFileTask(names.get(i), dependencies.get(i), null);
+        }
+        nodeCount = taskCount;
+    }
+
+    @Benchmark
+    public void fileTasksWithPlaceholderInputs() {
+        workspace = BenchmarkGraphs.newWorkspace(fileSystem, "/");
+        for (int i = 0; i < taskCount; i++) {
+            workspace.newFileTask(names.get(i), inputs.get(i), null);
+        }
+        nodeCount = 2L * taskCount;
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        long used = Long.MAX_VALUE;
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+            used = Math.min(used, runtime.totalMemory() - runtime.freeMemory());
+        }
+        return used;
+    }
+}
@@ -0,0 +1,81 @@
+package com.moekaku.tasuku.benchmark;
+
+import com.google.common.jimfs.Configuration;
+import com.google.common.jimfs.Jimfs;
+import com.moekaku.tasuku.Workspace;
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 20)
+@Fork(3)
+public class NoOpRunBenchmark {
+    @Param({"jimfs", "default"})
+    public String fileSystemType;
+
+    @Param({"1000", "10000"})
+    public int taskCount;
+
+    private FileSystem fileSystem;
+    private Path directory;
+    private Workspace workspace;
+    private String target;
+
+    @Setup
+    public void setUp() throws IOException {
+        if (fileSystemType.equals("jimfs")) {
+            fileSystem = Jimfs.newFileSystem(Configuration.unix());
+            directory = fileSystem.getPath("/work");
+            Files.createDirectories(directory);
+        } else {
+            fileSystem = FileSystems.getDefault();
+            directory = Files.createTempDirectory("tasuku-benchmark-");
+        }
+        workspace = BenchmarkGraphs.newWorkspace(fileSystem, directory.toAbsolutePath() + "/");
+        BenchmarkGraphs.addFileTasks(workspace, taskCount);
+        BenchmarkGraphs.writeUpToDateFiles(workspace, taskCount);
+        target = BenchmarkGraphs.getTaskName(taskCount - 1);
+        workspace.startSession();
+        if (workspace.needsToRun(target)) {
+            throw new IllegalStateException("The benchmark graph is not up to date.");
+        }
+        workspace.endSession();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        if (fileSystemType.equals("jimfs")) {
+            fileSystem.close();
+        } else {
+            FileUtils.deleteDirectory(directory.toFile());
+        }
+    }
+
+    @Benchmark
+    public void run() {
+        workspace.startSession();
+        workspace.run(target);
+        workspace.endSession();
+    }
+}
@@ -0,0 +1,75 @@
+package com.moekaku.tasuku.benchmark;
+
+import com.google.common.jimfs.Configuration;
+import com.google.common.jimfs.Jimfs;
+import com.moekaku.tasuku.Workspace;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.nio.file.FileSystem;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(3)
+public class ResolveNameBenchmark {
+    private static final int ROOT_COUNT = 16;
+    private static final int NAME_COUNT = 1024;
+
+    private FileSystem fileSystem;
+    private Workspace workspace;
+    private String[] names;
+
+    @Setup
+    public void setUp() {
+        fileSystem = Jimfs.newFileSystem(Configuration.unix());
+        Workspace.Builder builder = Workspace.builder().fileSystem(fileSystem);
+        for (int i = 0; i < ROOT_COUNT; i++) {
+            builder.root("ROOT" + i, "/root" + i + "/");
+        }
+        workspace = builder.build();
+        names = new String[NAME_COUNT];
+        for (int i = 0; i < NAME_COUNT; i++) {
+            switch (i % 3) {
+                case 0:
+                    names[i] = "/ROOT" + (i % ROOT_COUNT) + "/dir" + i + "/file.txt";
+                    break;
+                case 1:
+                    names[i] = "dir" + i + "/file.txt";
+                    break;
+                default:
+                    names[i] = "///absolute/dir" + i + "/file.txt";
+                    break;
+            }
+            workspace.newPlaceholderTask(names[i]);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        fileSystem.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(NAME_COUNT)
+    public void resolveName(Blackhole blackhole) {
+        for (String name : names) {
+            blackhole.consume(workspace.resolveName(name));
+        }
+    }
+}
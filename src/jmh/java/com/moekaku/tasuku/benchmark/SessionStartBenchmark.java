@@ -0,0 +1,165 @@
+package com.moekaku.tasuku.benchmark;
+
+import com.google.common.jimfs.Configuration;
+import com.google.common.jimfs.Jimfs;
+import com.moekaku.tasuku.Workspace;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.FileSystem;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(value = 3, jvmArgsAppend = {"-Xms2g", "-Xmx2g", "-Xmn1g"})
+public class SessionStartBenchmark {
+    // The single-shot benchmarks time a whole batch of sessions, because JMH does not divide single-shot
+    // scores by @OperationsPerInvocation. Their scores are per batch, not per session. A batch of new
+    // graphs holds a million tasks in total. A batch of growing graphs holds a hundred thousand tasks in
+    // total, and each graph gains one task before each of its sessions.
+    static final int NEW_GRAPH_BATCH_TASKS = 1000000;
+    static final int GROWING_GRAPH_BATCH_TASKS = 100000;
+    static final int GROWING_GRAPH_SESSIONS = 1000;
+
+    @State(Scope.Benchmark)
+    public static class FreshGraphs {
+        @Param({"1000", "10000", "100000"})
+        public int taskCount;
+
+        FileSystem fileSystem;
+        Workspace[] workspaces;
+
+        @Setup(Level.Trial)
+        public void setUpFileSystem() {
+            fileSystem = Jimfs.newFileSystem(Configuration.unix());
+        }
+
+        @Setup(Level.Iteration)
+        public void setUp() {
+            workspaces = new Workspace[Math.max(1, NEW_GRAPH_BATCH_TASKS / taskCount)];
+            for (int i = 0; i < workspaces.length; i++) {
+                workspaces[i] = BenchmarkGraphs.newWorkspace(fileSystem, "/");
+                BenchmarkGraphs.addFileTasks(workspaces[i], taskCount);
+            }
+            System.gc();
+        }
+
+        @TearDown(Level.Iteration)
+        public void tearDown() {
+            workspaces = null;
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDownFileSystem() throws IOException {
+            fileSystem.close();
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class GrowingGraphs {
+        @Param({"1000", "10000", "100000"})
+        public int taskCount;
+
+        FileSystem fileSystem;
+        Workspace[] workspaces;
+
+        @Setup(Level.Trial)
+        public void setUpFileSystem() {
+            fileSystem = Jimfs.newFileSystem(Configuration.unix());
+        }
+
+        @Setup(Level.Iteration)
+        public void setUp() {
+            workspaces = new Workspace[Math.max(1, GROWING_GRAPH_BATCH_TASKS / taskCount)];
+            for (int i = 0; i < workspaces.length; i++) {
+                workspaces[i] = BenchmarkGraphs.newWorkspace(fileSystem, "/");
+                BenchmarkGraphs.addFileTasks(workspaces[i], taskCount);
+                workspaces[i].startSession();
+                workspaces[i].endSession();
+            }
+            System.gc();
+        }
+
+        @TearDown(Level.Iteration)
+        public void tearDown() {
+            workspaces = null;
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDownFileSystem() throws IOException {
+            fileSystem.close();
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class UnchangedGraph {
+        @Param({"1000", "10000", "100000"})
+        public int taskCount;
+
+        FileSystem fileSystem;
+        Workspace workspace;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            fileSystem = Jimfs.newFileSystem(Configuration.unix());
+            workspace = BenchmarkGraphs.newWorkspace(fileSystem, "/");
+            BenchmarkGraphs.addFileTasks(workspace, taskCount);
+            workspace.startSession();
+            workspace.endSession();
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDownFileSystem() throws IOException {
+            fileSystem.close();
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @Warmup(iterations = 10)
+    @Measurement(iterations = 15)
+    public void startSession_newlyBuiltGraph(FreshGraphs state) {
+        for (Workspace workspace : state.workspaces) {
+            workspace.startSession();
+            workspace.endSession();
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @Warmup(iterations = 20)
+    @Measurement(iterations = 15)
+    public void startSession_afterAddingOneTask(GrowingGraphs state) {
+        for (Workspace workspace : state.workspaces) {
+            for (int i = 0; i < GROWING_GRAPH_SESSIONS; i++) {
+                int index = state.taskCount + i;
+                workspace.newFileTask(BenchmarkGraphs.getTaskName(index),
+                        Collections.singletonList(BenchmarkGraphs.getTaskName(index - 1)), null);
+                workspace.startSession();
+                workspace.endSession();
+            }
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    @Warmup(iterations = 5)
+    @Measurement(iterations = 20)
+    public void startSession_unchangedGraph(UnchangedGraph state) {
+        state.workspace.startSession();
+        state.workspace.endSession();
+    }
+}
@@ -0,0 +1,42 @@
+package com.moekaku.tasuku;
+
+public interface Action extends Runnable {
+    String getIdentity();
+
+    default boolean isCpuBound() {
+        return false;
+    }
+
+    static Action of(String identity, Runnable runnable) {
+        return new Action() {
+            @Override
+            public String getIdentity() {
+                return identity;
+            }
+
+            @Override
+            public void run() {
+                runnable.run();
+            }
+        };
+    }
+
+    static Action cpuBound(String identity, Runnable runnable) {
+        return new Action() {
+            @Override
+            public String getIdentity() {
+                return identity;
+            }
+
+            @Override
+            public boolean isCpuBound() {
+                return true;
+            }
+
+            @Override
+            public void run() {
+                runnable.run();
+            }
+        };
+    }
+}
@@ -0,0 +1,8 @@
+package com.moekaku.tasuku;
+
+import java.nio.file.Path;
+
+public interface ArtifactStore {
+    boolean restore(String key, Path destination);
+    void store(String key, Path source);
+}
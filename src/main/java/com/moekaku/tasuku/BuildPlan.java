@@ -0,0 +1,76 @@
+package com.moekaku.tasuku;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public final class BuildPlan {
+    private final List<Step> steps;
+    private final List<List<Step>> levels;
+
+    public BuildPlan(List<Step> steps) {
+        this.steps = ImmutableList.copyOf(steps);
+        List<ImmutableList.Builder<Step>> levelBuilders = new ArrayList<>();
+        for (Step step : this.steps) {
+            while (levelBuilders.size() <= step.getLevel()) {
+                levelBuilders.add(ImmutableList.builder());
+            }
+            levelBuilders.get(step.getLevel()).add(step);
+        }
+        ImmutableList.Builder<List<Step>> levels = ImmutableList.builder();
+        levelBuilders.forEach(builder -> levels.add(builder.build()));
+        this.levels = levels.build();
+    }
+
+    public List<Step> getSteps() {
+        return steps;
+    }
+
+    public List<List<Step>> getLevels() {
+        return levels;
+    }
+
+    public int getMaxParallelism() {
+        int result = 0;
+        for (List<Step> level : levels) {
+            result = Math.max(result, level.size());
+        }
+        return result;
+    }
+
+    public boolean isUpToDate() {
+        return steps.isEmpty();
+    }
+
+    public static final class Step {
+        private final String taskName;
+        private final StaleReason reason;
+        private final int level;
+
+        public Step(String taskName, StaleReason reason, int level) {
+            Preconditions.checkArgument(level >= 0, "Level must not be negative.");
+            this.taskName = Preconditions.checkNotNull(taskName);
+            this.reason = reason;
+            this.level = level;
+        }
+
+        public String getTaskName() {
+            return taskName;
+        }
+
+        public StaleReason getReason() {
+            return reason;
+        }
+
+        public int getLevel() {
+            return level;
+        }
+
+        @Override
+        public String toString() {
+            return taskName + " (level " + level + ")";
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package com.moekaku.tasuku;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableMap;
+
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+public final class BuildResult {
+    public enum Status {
+        SUCCEEDED,
+        FAILED,
+        NOT_RUN
+    }
+
+    private final Map<String, Status> statuses;
+    private final Map<String, Throwable> failures;
+
+    public BuildResult(Map<String, Status> statuses, Map<String, Throwable> failures) {
+        this.statuses = ImmutableMap.copyOf(statuses);
+        this.failures = ImmutableMap.copyOf(failures);
+    }
+
+    public Set<String> getTargets() {
+        return statuses.keySet();
+    }
+
+    public Status getStatus(String target) {
+        Status status = statuses.get(target);
+        Preconditions.checkArgument(status != null, "Task " + target + " is not a target of this run!");
+        return status;
+    }
+
+    public Throwable getFailure(String target) {
+        getStatus(target);
+        return failures.get(target);
+    }
+
+    public Set<String> getFailedTargets() {
+        LinkedHashSet<String> result = new LinkedHashSet<>();
+        statuses.forEach((target, status) -> {
+            if (status != Status.SUCCEEDED) {
+                result.add(target);
+            }
+        });
+        return result;
+    }
+
+    public boolean isSuccessful() {
+        return !statuses.containsValue(Status.FAILED) && !statuses.containsValue(Status.NOT_RUN);
+    }
+}
@@ -0,0 +1,27 @@
+package com.moekaku.tasuku;
+
+public interface BuildTracer {
+    default void sessionStarted() {
+        // NO-OP
+    }
+
+    default void staleCheckStarted(Task task) {
+        // NO-OP
+    }
+
+    default void staleCheckFinished(Task task, boolean stale, StaleReason reason) {
+        // NO-OP
+    }
+
+    default void executionStarted(Task task) {
+        // NO-OP
+    }
+
+    default void executionFinished(Task task, Throwable failure) {
+        // NO-OP
+    }
+
+    default void sessionEnded() {
+        // NO-OP
+    }
+}
@@ -0,0 +1,11 @@
+package com.moekaku.tasuku;
+
+import java.util.concurrent.TimeUnit;
+
+public interface CommandHandle {
+    int waitFor();
+    boolean waitFor(long timeout, TimeUnit unit);
+    int getExitCode();
+    boolean isAlive();
+    void destroy();
+}
@@ -1,65 +1,235 @@
 package com.moekaku.tasuku;
 
+import com.google.common.base.Preconditions;
+
 import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class CommandLineUtil {
-    private static final String COMMAND_FILE_NAME = ".temp/command.sh";
-    private static final String COMMAND_DIR = ".temp";
+    private static final int MAX_INLINE_COMMAND_LENGTH = 32 * 1024;
+    private static final int BUFFER_SIZE = 8192;
+    private static final AtomicInteger pumpNumber = new AtomicInteger(0);
+    private static volatile Semaphore processPermits =
+            new Semaphore(Runtime.getRuntime().availableProcessors(), true);
+
+    public static void setMaxConcurrentProcesses(int maxConcurrentProcesses) {
+        Preconditions.checkArgument(maxConcurrentProcesses >= 1,
+                "The maximum number of concurrent processes must be at least 1.");
+        processPermits = new Semaphore(maxConcurrentProcesses, true);
+    }
+
+    private static boolean isLinux() {
+        return System.getProperty("os.name").toLowerCase().startsWith("linux");
+    }
 
-    private static void writeCommandFile(String content) {
+    private static String[] getPlatformDependentCommand(String command, Path scriptFile) {
+        if (isLinux()) {
+            if (scriptFile == null) {
+                return new String[]{"sh", "-c", command};
+            } else {
+                return new String[]{"sh", scriptFile.toString()};
+            }
+        } else {
+            return command.trim().split("\\s+");
+        }
+    }
+
+    private static Path writeScriptFile(String command) throws IOException {
+        if (!isLinux() || command.length() <= MAX_INLINE_COMMAND_LENGTH) {
+            return null;
+        }
+        Path scriptFile = Files.createTempFile("tasuku-command-", ".sh");
         try {
-            BufferedWriter fout = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(COMMAND_FILE_NAME)));
-            fout.write(content);
-            fout.flush();
-            fout.close();
-        } catch (Exception e) {
-            throw new RuntimeException(e);
+            Files.write(scriptFile, command.getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            Files.deleteIfExists(scriptFile);
+            throw e;
         }
+        return scriptFile;
     }
 
-    private static String getPlatformDependentCommand(String command) {
-        String platform = System.getProperty("os.name").toLowerCase();
-        if (platform.startsWith("linux")) {
-            new File(COMMAND_DIR).mkdirs();
-            writeCommandFile(command);
-            return COMMAND_FILE_NAME;
-        } else {
-            return command;
+    private static void deleteScriptFile(Path scriptFile) {
+        if (scriptFile == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(scriptFile);
+        } catch (IOException e) {
+            scriptFile.toFile().deleteOnExit();
         }
     }
 
-    public static void run(String command) {
-        command = getPlatformDependentCommand(command);
-        ProcessBuilder builder = new ProcessBuilder(command.split(" "));
-        builder.redirectErrorStream(true);
+    public static CommandHandle start(String command, OutputSink stdout) {
+        return start(command, stdout, null);
+    }
+
+    public static CommandHandle start(String command, OutputSink stdout, OutputSink stderr) {
+        Preconditions.checkNotNull(stdout);
+        Semaphore permits = processPermits;
         try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+        Path scriptFile = null;
+        try {
+            scriptFile = writeScriptFile(command);
+            ProcessBuilder builder = new ProcessBuilder(getPlatformDependentCommand(command, scriptFile));
+            builder.redirectErrorStream(stderr == null);
             Process process = builder.start();
-            InputStream input = process.getInputStream();
-            BufferedReader reader = new BufferedReader(new InputStreamReader(input));
-            String line;
-            while ((line = reader.readLine()) != null) {
-                System.out.println(line);
-            }
+            return new RunningCommand(process, stdout, stderr, permits, scriptFile);
         } catch (Exception e) {
+            deleteScriptFile(scriptFile);
+            permits.release();
             throw new RuntimeException(e);
         }
     }
 
+    public static void run(String command) {
+        CommandHandle handle = start(command, OutputSink.to(System.out));
+        checkExitCode(command, handle.waitFor());
+    }
+
     public static String runAndGetOutput(String command) {
-        command = getPlatformDependentCommand(command);
-        try {
-            Process process = Runtime.getRuntime().exec(command);
-            InputStream input = process.getInputStream();
-            BufferedReader reader = new BufferedReader(new InputStreamReader(input));
-            StringBuilder builder = new StringBuilder();
-            String line;
-            while ((line = reader.readLine()) != null) {
-                builder.append(line);
-                builder.append("\n");
+        StringBuilder builder = new StringBuilder();
+        CommandHandle handle = start(command,
+                OutputSink.lines(line -> builder.append(line).append("\n")),
+                OutputSink.to(System.err));
+        checkExitCode(command, handle.waitFor());
+        return builder.toString();
+    }
+
+    private static void checkExitCode(String command, int exitCode) {
+        if (exitCode != 0) {
+            throw new RuntimeException("Command '" + command + "' failed with exit code " + exitCode + ".");
+        }
+    }
+
+    private static class RunningCommand implements CommandHandle {
+        private final Process process;
+        private final Semaphore permits;
+        private final Path scriptFile;
+        private final CountDownLatch pumpsDone;
+        private final CountDownLatch done = new CountDownLatch(1);
+        private volatile int exitCode = -1;
+        private volatile Throwable failure;
+
+        RunningCommand(Process process, OutputSink stdout, OutputSink stderr, Semaphore permits, Path scriptFile) {
+            this.process = process;
+            this.permits = permits;
+            this.scriptFile = scriptFile;
+            this.pumpsDone = new CountDownLatch(stderr == null ? 1 : 2);
+            closeStdin(process);
+            startPump(process.getInputStream(), stdout, true);
+            if (stderr != null) {
+                startPump(process.getErrorStream(), stderr, false);
             }
-            return builder.toString();
-        } catch (Exception e) {
-            throw new RuntimeException(e);
+        }
+
+        // Commands never receive input: their stdin is empty, so one that reads it sees end-of-file instead
+        // of blocking the build. Scripts are passed as arguments or files, never through stdin.
+        private static void closeStdin(Process process) {
+            try {
+                process.getOutputStream().close();
+            } catch (IOException e) {
+                // The process may have already exited.
+            }
+        }
+
+        private void startPump(InputStream input, OutputSink sink, boolean reaper) {
+            Thread thread = new Thread(() -> {
+                pump(input, sink);
+                pumpsDone.countDown();
+                if (reaper) {
+                    reap();
+                }
+            }, "tasuku-process-pump-" + pumpNumber.incrementAndGet());
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        private void pump(InputStream input, OutputSink sink) {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            try (InputStream in = input) {
+                int count;
+                while ((count = in.read(buffer)) != -1) {
+                    sink.write(buffer, 0, count);
+                }
+            } catch (Throwable e) {
+                failure = e;
+            } finally {
+                try {
+                    sink.close();
+                } catch (Throwable e) {
+                    failure = e;
+                }
+            }
+        }
+
+        private void reap() {
+            boolean interrupted = false;
+            while (true) {
+                try {
+                    pumpsDone.await();
+                    exitCode = process.waitFor();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            deleteScriptFile(scriptFile);
+            permits.release();
+            done.countDown();
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        @Override
+        public int waitFor() {
+            try {
+                done.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            }
+            return getExitCode();
+        }
+
+        @Override
+        public boolean waitFor(long timeout, TimeUnit unit) {
+            try {
+                return done.await(timeout, unit);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            }
+        }
+
+        @Override
+        public int getExitCode() {
+            Preconditions.checkState(done.getCount() == 0, "The command has not finished yet.");
+            if (failure != null) {
+                throw new RuntimeException("Failed to read the output of the command.", failure);
+            }
+            return exitCode;
+        }
+
+        @Override
+        public boolean isAlive() {
+            return done.getCount() > 0;
+        }
+
+        @Override
+        public void destroy() {
+            process.destroy();
         }
     }
 }
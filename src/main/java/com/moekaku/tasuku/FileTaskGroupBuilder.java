@@ -9,6 +9,11 @@ public interface FileTaskGroupBuilder {
     void add(String fileTaskName, String group);
     void add(String fileTaskName, String... group);
     void add(String fileTaskName, List<String> group);
+
+    default void ownDirectory(String group, String directoryName) {
+        // NO-OP
+    }
+
     String getResolvedPrefix();
 
     static void build(Workspace ws, String prefix, Consumer<FileTaskGroupBuilder> taskCreator) {
@@ -0,0 +1,11 @@
+package com.moekaku.tasuku;
+
+import java.util.List;
+
+public interface GraphBuilder {
+    GraphBuilder fileTask(String taskName, List<String> dependencies, Runnable action);
+    GraphBuilder commandTask(String taskName, List<String> dependencies, Runnable action);
+    GraphBuilder placeholderTask(String taskName);
+    int size();
+    void publish();
+}
@@ -0,0 +1,129 @@
+package com.moekaku.tasuku;
+
+import com.google.common.base.Preconditions;
+
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.ProviderMismatchException;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.DosFileAttributeView;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.HashSet;
+import java.util.Set;
+
+public class LocalArtifactStore implements ArtifactStore {
+    private final Path directory;
+    private final boolean hardLink;
+
+    public LocalArtifactStore(Path directory) {
+        this(directory, false);
+    }
+
+    public LocalArtifactStore(Path directory, boolean hardLink) {
+        this.directory = Preconditions.checkNotNull(directory);
+        this.hardLink = hardLink;
+    }
+
+    private Path getEntryPath(String key) {
+        Preconditions.checkArgument(key.length() > 2 && key.matches("[0-9a-f]+"),
+                "Artifact keys must be hexadecimal strings.");
+        return directory.resolve(key.substring(0, 2)).resolve(key);
+    }
+
+    @Override
+    public boolean restore(String key, Path destination) {
+        Path entry = getEntryPath(key);
+        if (!Files.isRegularFile(entry)) {
+            return false;
+        }
+        try {
+            Path parent = destination.toAbsolutePath().getParent();
+            if (parent != null) {
+                Files.createDirectories(parent);
+            }
+            Files.deleteIfExists(destination);
+            // Only read-only entries are linked, so that builds can tell a linked output from their own.
+            if (!hardLink || !isReadOnly(entry) || !tryLink(entry, destination)) {
+                Files.copy(entry, destination, StandardCopyOption.REPLACE_EXISTING);
+                setWritable(destination, true);
+            }
+            // A linked output shares the entry's inode, so this also marks the entry as recently used.
+            Files.setLastModifiedTime(destination, FileTime.fromMillis(System.currentTimeMillis()));
+            return true;
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static boolean tryLink(Path entry, Path destination) {
+        try {
+            Files.createLink(destination, entry);
+            return true;
+        } catch (IOException | UnsupportedOperationException | ProviderMismatchException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public void store(String key, Path source) {
+        Path entry = getEntryPath(key);
+        if (Files.exists(entry)) {
+            return;
+        }
+        try {
+            Files.createDirectories(entry.getParent());
+            Path tempPath = Files.createTempFile(entry.getParent(), key, ".tmp");
+            try {
+                Files.copy(source, tempPath, StandardCopyOption.REPLACE_EXISTING);
+                if (hardLink) {
+                    setWritable(tempPath, false);
+                }
+                try {
+                    Files.move(tempPath, entry, StandardCopyOption.ATOMIC_MOVE);
+                } catch (AtomicMoveNotSupportedException e) {
+                    Files.move(tempPath, entry);
+                }
+            } catch (FileAlreadyExistsException e) {
+                // Another build stored the same artifact first.
+            } finally {
+                Files.deleteIfExists(tempPath);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static boolean isReadOnly(Path path) throws IOException {
+        PosixFileAttributeView posixView = Files.getFileAttributeView(path, PosixFileAttributeView.class);
+        if (posixView != null) {
+            return !posixView.readAttributes().permissions().contains(PosixFilePermission.OWNER_WRITE);
+        }
+        DosFileAttributeView dosView = Files.getFileAttributeView(path, DosFileAttributeView.class);
+        return dosView != null && dosView.readAttributes().isReadOnly();
+    }
+
+    private static void setWritable(Path path, boolean writable) throws IOException {
+        PosixFileAttributeView posixView = Files.getFileAttributeView(path, PosixFileAttributeView.class);
+        if (posixView != null) {
+            Set<PosixFilePermission> permissions = new HashSet<>(posixView.readAttributes().permissions());
+            if (writable) {
+                permissions.add(PosixFilePermission.OWNER_WRITE);
+            } else {
+                permissions.remove(PosixFilePermission.OWNER_WRITE);
+                permissions.remove(PosixFilePermission.GROUP_WRITE);
+                permissions.remove(PosixFilePermission.OTHERS_WRITE);
+            }
+            posixView.setPermissions(permissions);
+            return;
+        }
+        DosFileAttributeView dosView = Files.getFileAttributeView(path, DosFileAttributeView.class);
+        if (dosView != null) {
+            dosView.setReadOnly(!writable);
+        }
+    }
+}
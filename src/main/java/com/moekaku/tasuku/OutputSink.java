@@ -0,0 +1,87 @@
+package com.moekaku.tasuku;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+public interface OutputSink {
+    int MAX_LINE_LENGTH = 64 * 1024;
+
+    void write(byte[] buffer, int offset, int length);
+
+    default void close() {
+        // NO-OP
+    }
+
+    static OutputSink discard() {
+        return (buffer, offset, length) -> {
+            // NO-OP
+        };
+    }
+
+    static OutputSink to(OutputStream stream) {
+        return new OutputSink() {
+            @Override
+            public void write(byte[] buffer, int offset, int length) {
+                try {
+                    stream.write(buffer, offset, length);
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+
+            @Override
+            public void close() {
+                try {
+                    stream.flush();
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        };
+    }
+
+    static OutputSink lines(Consumer<String> consumer) {
+        return new OutputSink() {
+            private final Charset charset = Charset.defaultCharset();
+            private byte[] line = new byte[256];
+            private int lineLength = 0;
+
+            @Override
+            public void write(byte[] buffer, int offset, int length) {
+                for (int i = offset; i < offset + length; i++) {
+                    byte b = buffer[i];
+                    if (b == '\n') {
+                        flushLine();
+                    } else {
+                        if (lineLength == MAX_LINE_LENGTH) {
+                            flushLine();
+                        }
+                        if (lineLength == line.length) {
+                            line = Arrays.copyOf(line, Math.min(line.length * 2, MAX_LINE_LENGTH));
+                        }
+                        line[lineLength++] = b;
+                    }
+                }
+            }
+
+            @Override
+            public void close() {
+                if (lineLength > 0) {
+                    flushLine();
+                }
+            }
+
+            private void flushLine() {
+                int length = lineLength;
+                if (length > 0 && line[length - 1] == '\r') {
+                    length--;
+                }
+                consumer.accept(new String(line, 0, length, charset));
+                lineLength = 0;
+            }
+        };
+    }
+}
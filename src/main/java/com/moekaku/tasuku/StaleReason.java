@@ -0,0 +1,73 @@
+package com.moekaku.tasuku;
+
+import com.google.common.base.Preconditions;
+
+import java.util.Objects;
+
+public final class StaleReason {
+    public enum Kind {
+        FILE_MISSING("Task %s will be run because the corresponding file does not exists."),
+        DEPENDENCY_STALE("Task %s will be run because dependency %s also needs to be run."),
+        DEFINITION_CHANGED("Task %s needs to be run because its dependencies or action changed since the last run."),
+        DEPENDENCY_NEWER("Task %s needs to be run because task %s has later time stamp."),
+        DEPENDENCY_IS_COMMAND("Task %s needs to be run because task %s is a command."),
+        INPUT_CONTENT_CHANGED("Task %s needs to be run because the content of task %s changed."),
+        COMMAND("Task %s is a command."),
+        PLACEHOLDER_FILE_MISSING("The file of placeholder task %s does not exists.");
+
+        private final String format;
+
+        Kind(String format) {
+            this.format = format;
+        }
+    }
+
+    private final Kind kind;
+    private final String taskName;
+    private final String relatedTaskName;
+
+    public StaleReason(Kind kind, String taskName, String relatedTaskName) {
+        this.kind = Preconditions.checkNotNull(kind);
+        this.taskName = Preconditions.checkNotNull(taskName);
+        this.relatedTaskName = relatedTaskName;
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    public String getTaskName() {
+        return taskName;
+    }
+
+    public String getRelatedTaskName() {
+        return relatedTaskName;
+    }
+
+    public String getMessage() {
+        return String.format(kind.format, taskName, relatedTaskName);
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) {
+            return true;
+        }
+        if (!(other instanceof StaleReason)) {
+            return false;
+        }
+        StaleReason reason = (StaleReason) other;
+        return kind == reason.kind && taskName.equals(reason.taskName)
+                && Objects.equals(relatedTaskName, reason.relatedTaskName);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(kind, taskName, relatedTaskName);
+    }
+
+    @Override
+    public String toString() {
+        return getMessage();
+    }
+}
@@ -0,0 +1,5 @@
+package com.moekaku.tasuku;
+
+public interface TaskProvider {
+    boolean provideTask(String resolvedTaskName);
+}
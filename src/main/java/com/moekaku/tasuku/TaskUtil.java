@@ -1,26 +1,143 @@
 package com.moekaku.tasuku;
 
+import com.google.common.io.MoreFiles;
+import com.google.common.io.RecursiveDeleteOption;
 import org.slf4j.Logger;
 
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class TaskUtil {
+    public static final int DEFAULT_DELETE_CONCURRENCY = 8;
+    private static final int MAX_DELETE_BATCH_SIZE = 1024;
+    private static final int PROGRESS_STEPS = 10;
+
     public static void createDeleteAllTask(Workspace ws, String taskName, List<String> filesToDelete) {
+        createDeleteAllTask(ws, taskName, filesToDelete, Collections.emptyList(), DEFAULT_DELETE_CONCURRENCY);
+    }
+
+    public static void createDeleteAllTask(Workspace ws, String taskName, List<String> filesToDelete,
+                                           List<String> directoriesToDelete, int concurrency) {
+        ws.newCommandTask(taskName, Collections.emptyList(),
+                () -> deleteAll(ws, filesToDelete, directoriesToDelete, concurrency));
+    }
+
+    public static void deleteAll(Workspace ws, List<String> filesToDelete, List<String> directoriesToDelete,
+                                 int concurrency) {
+        if (concurrency < 1) {
+            throw new IllegalArgumentException("Concurrency must be at least 1.");
+        }
         Logger logger = ws.getLoggerFactory().getLogger(TaskUtil.class.getName());
-        ws.newCommandTask(taskName, Collections.emptyList(), () -> {
-            for(String fileName : filesToDelete) {
-                Path path = ws.getFileSystem().getPath(fileName);
+        List<List<Path>> batches = new ArrayList<>();
+        for (String directoryName : directoriesToDelete) {
+            batches.add(Collections.singletonList(ws.getFileSystem().getPath(directoryName)));
+        }
+        int directoryBatchCount = batches.size();
+        LinkedHashMap<Path, List<Path>> filesByDirectory = new LinkedHashMap<>();
+        for (String fileName : filesToDelete) {
+            Path path = ws.getFileSystem().getPath(fileName);
+            Path parent = path.toAbsolutePath().getParent();
+            filesByDirectory.computeIfAbsent(parent, key -> new ArrayList<>()).add(path);
+        }
+        for (List<Path> files : filesByDirectory.values()) {
+            for (int start = 0; start < files.size(); start += MAX_DELETE_BATCH_SIZE) {
+                batches.add(files.subList(start, Math.min(files.size(), start + MAX_DELETE_BATCH_SIZE)));
+            }
+        }
+        if (batches.isEmpty()) {
+            return;
+        }
+
+        long total = filesToDelete.size() + directoriesToDelete.size();
+        logger.info("Deleting {} file(s) and {} directory(ies) in {} batch(es) ...",
+                filesToDelete.size(), directoriesToDelete.size(), batches.size());
+        AtomicLong processed = new AtomicLong();
+        AtomicLong deleted = new AtomicLong();
+        ConcurrentLinkedQueue<IOException> deleteFailures = new ConcurrentLinkedQueue<>();
+        AtomicLong nextReport = new AtomicLong(Math.max(1, total / PROGRESS_STEPS));
+        AtomicInteger threadNumber = new AtomicInteger(0);
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(concurrency, batches.size()), runnable -> {
+            Thread thread = new Thread(runnable, "tasuku-delete-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        List<Future<?>> futures = new ArrayList<>();
+        try {
+            for (int i = 0; i < batches.size(); i++) {
+                List<Path> batch = batches.get(i);
+                boolean directories = i < directoryBatchCount;
+                futures.add(executor.submit(() -> {
+                    for (Path path : batch) {
+                        try {
+                            if (delete(path, directories)) {
+                                deleted.incrementAndGet();
+                            }
+                        } catch (IOException e) {
+                            deleteFailures.add(e);
+                        }
+                    }
+                    long done = processed.addAndGet(batch.size());
+                    long threshold = nextReport.get();
+                    if (done >= threshold && done < total
+                            && nextReport.compareAndSet(threshold, done + Math.max(1, total / PROGRESS_STEPS))) {
+                        logger.info("Deleted {} of {} path(s) ...", done, total);
+                    }
+                    return null;
+                }));
+            }
+            RuntimeException failure = null;
+            for (Future<?> future : futures) {
                 try {
-                    logger.info("Deleting " + fileName + " ...");
-                    Files.deleteIfExists(path);
-                } catch (IOException e) {
+                    future.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
                     throw new RuntimeException(e);
+                } catch (Exception e) {
+                    Throwable cause = e.getCause() == null ? e : e.getCause();
+                    if (failure == null) {
+                        failure = new RuntimeException(cause);
+                    } else {
+                        failure.addSuppressed(cause);
+                    }
                 }
             }
-        });
+            if (!deleteFailures.isEmpty()) {
+                RuntimeException deleteFailure =
+                        new RuntimeException("Could not delete " + deleteFailures.size() + " path(s).");
+                for (IOException e : deleteFailures) {
+                    deleteFailure.addSuppressed(e);
+                }
+                if (failure == null) {
+                    failure = deleteFailure;
+                } else {
+                    failure.addSuppressed(deleteFailure);
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        logger.info("Deleted {} of {} path(s).", deleted.get(), total);
+    }
+
+    private static boolean delete(Path path, boolean directory) throws IOException {
+        if (directory && Files.isDirectory(path)) {
+            MoreFiles.deleteRecursively(path, RecursiveDeleteOption.ALLOW_INSECURE);
+            return true;
+        }
+        return Files.deleteIfExists(path);
     }
 }
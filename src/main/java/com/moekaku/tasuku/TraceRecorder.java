@@ -0,0 +1,289 @@
+package com.moekaku.tasuku;
+
+import org.slf4j.ILoggerFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+public class TraceRecorder implements BuildTracer {
+    private static final int MAX_SUMMARY_ENTRIES = 50;
+
+    private final Logger logger;
+    private final ConcurrentLinkedQueue<Span> spans = new ConcurrentLinkedQueue<>();
+    private final ConcurrentHashMap<Long, String> threadNames = new ConcurrentHashMap<>();
+    private final ThreadLocal<List<Span>> openChecks = ThreadLocal.withInitial(ArrayList::new);
+    private final ConcurrentHashMap<String, Span> openExecutions = new ConcurrentHashMap<>();
+    private volatile long sessionStart = System.nanoTime();
+    private volatile long sessionEnd = -1;
+
+    public TraceRecorder() {
+        this(LoggerFactory.getILoggerFactory());
+    }
+
+    public TraceRecorder(ILoggerFactory loggerFactory) {
+        this.logger = loggerFactory.getLogger(getClass().getName());
+    }
+
+    public static class Span {
+        private final String taskName;
+        private final List<String> dependencies;
+        private final boolean execution;
+        private final long threadId;
+        private final long start;
+        private long end = -1;
+        private boolean stale;
+        private StaleReason reason;
+        private boolean failed;
+
+        Span(Task task, boolean execution, long start) {
+            this.taskName = task.getName();
+            this.dependencies = task.getDependencies();
+            this.execution = execution;
+            this.threadId = Thread.currentThread().getId();
+            this.start = start;
+        }
+
+        public String getTaskName() {
+            return taskName;
+        }
+
+        public boolean isExecution() {
+            return execution;
+        }
+
+        public long getThreadId() {
+            return threadId;
+        }
+
+        public long getStartNanos() {
+            return start;
+        }
+
+        public long getDurationNanos() {
+            return end - start;
+        }
+
+        public boolean isStale() {
+            return stale;
+        }
+
+        public StaleReason getReason() {
+            return reason;
+        }
+
+        public boolean isFailed() {
+            return failed;
+        }
+    }
+
+    @Override
+    public void sessionStarted() {
+        spans.clear();
+        threadNames.clear();
+        openExecutions.clear();
+        sessionStart = System.nanoTime();
+        sessionEnd = -1;
+    }
+
+    @Override
+    public void staleCheckStarted(Task task) {
+        recordThread();
+        openChecks.get().add(new Span(task, false, System.nanoTime() - sessionStart));
+    }
+
+    @Override
+    public void staleCheckFinished(Task task, boolean stale, StaleReason reason) {
+        List<Span> checks = openChecks.get();
+        if (checks.isEmpty()) {
+            return;
+        }
+        Span span = checks.remove(checks.size() - 1);
+        span.end = System.nanoTime() - sessionStart;
+        span.stale = stale;
+        span.reason = reason;
+        spans.add(span);
+    }
+
+    @Override
+    public void executionStarted(Task task) {
+        recordThread();
+        openExecutions.put(task.getName(), new Span(task, true, System.nanoTime() - sessionStart));
+    }
+
+    @Override
+    public void executionFinished(Task task, Throwable failure) {
+        Span span = openExecutions.remove(task.getName());
+        if (span == null) {
+            return;
+        }
+        span.end = System.nanoTime() - sessionStart;
+        span.failed = failure != null;
+        spans.add(span);
+    }
+
+    @Override
+    public void sessionEnded() {
+        sessionEnd = System.nanoTime() - sessionStart;
+        if (logger.isInfoEnabled()) {
+            logger.info(getCriticalPathSummary());
+        }
+    }
+
+    public List<Span> getSpans() {
+        List<Span> result = new ArrayList<>(spans);
+        result.sort(Comparator.comparingLong(Span::getStartNanos));
+        return result;
+    }
+
+    public List<Span> getCriticalPath() {
+        List<Span> executions = new ArrayList<>();
+        for (Span span : getSpans()) {
+            if (span.execution) {
+                executions.add(span);
+            }
+        }
+        HashMap<String, Long> pathCost = new HashMap<>();
+        HashMap<String, Span> spanByName = new HashMap<>();
+        HashMap<String, String> predecessor = new HashMap<>();
+        Span last = null;
+        long lastCost = -1;
+        for (Span span : executions) {
+            long best = 0;
+            String bestDependency = null;
+            for (String dependency : span.dependencies) {
+                Long cost = pathCost.get(dependency);
+                if (cost != null && cost > best) {
+                    best = cost;
+                    bestDependency = dependency;
+                }
+            }
+            long cost = best + span.getDurationNanos();
+            pathCost.put(span.taskName, cost);
+            spanByName.put(span.taskName, span);
+            if (bestDependency != null) {
+                predecessor.put(span.taskName, bestDependency);
+            }
+            if (cost > lastCost) {
+                lastCost = cost;
+                last = span;
+            }
+        }
+        List<Span> path = new ArrayList<>();
+        for (Span span = last; span != null; span = spanByName.get(predecessor.get(span.taskName))) {
+            path.add(span);
+        }
+        Collections.reverse(path);
+        return path;
+    }
+
+    public String getCriticalPathSummary() {
+        List<Span> path = getCriticalPath();
+        long total = 0;
+        for (Span span : path) {
+            total += span.getDurationNanos();
+        }
+        long wallTime = sessionEnd < 0 ? System.nanoTime() - sessionStart : sessionEnd;
+        StringBuilder builder = new StringBuilder();
+        builder.append(String.format("Critical path: %d task(s), %.3f ms of %.3f ms wall time.",
+                path.size(), total / 1e6, wallTime / 1e6));
+        List<Span> shown = path.size() > MAX_SUMMARY_ENTRIES
+                ? path.subList(path.size() - MAX_SUMMARY_ENTRIES, path.size())
+                : path;
+        if (shown.size() < path.size()) {
+            builder.append(String.format("%n  ... %d earlier task(s)", path.size() - shown.size()));
+        }
+        for (Span span : shown) {
+            builder.append(String.format("%n  %10.3f ms  %s", span.getDurationNanos() / 1e6, span.taskName));
+        }
+        return builder.toString();
+    }
+
+    public void writeChromeTrace(Writer writer) {
+        try {
+            writer.write("{\"traceEvents\":[");
+            boolean first = true;
+            for (Map.Entry<Long, String> entry : threadNames.entrySet()) {
+                first = writeSeparator(writer, first);
+                writer.write("{\"name\":\"thread_name\",\"ph\":\"M\",\"pid\":1,\"tid\":" + entry.getKey()
+                        + ",\"args\":{\"name\":" + quote(entry.getValue()) + "}}");
+            }
+            for (Span span : getSpans()) {
+                first = writeSeparator(writer, first);
+                writer.write("{\"name\":" + quote(span.taskName)
+                        + ",\"cat\":\"" + (span.execution ? "run" : "check") + "\""
+                        + ",\"ph\":\"X\",\"pid\":1,\"tid\":" + span.threadId
+                        + ",\"ts\":" + toMicros(span.start)
+                        + ",\"dur\":" + toMicros(span.getDurationNanos())
+                        + ",\"args\":" + getArgs(span) + "}");
+            }
+            writer.write("]}");
+            writer.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void recordThread() {
+        Thread thread = Thread.currentThread();
+        threadNames.putIfAbsent(thread.getId(), thread.getName());
+    }
+
+    private static boolean writeSeparator(Writer writer, boolean first) throws IOException {
+        if (!first) {
+            writer.write(",\n");
+        }
+        return false;
+    }
+
+    private static String getArgs(Span span) {
+        LinkedHashMap<String, String> args = new LinkedHashMap<>();
+        if (span.execution) {
+            args.put("failed", Boolean.toString(span.failed));
+        } else {
+            args.put("stale", Boolean.toString(span.stale));
+            if (span.reason != null) {
+                args.put("reason", quote(span.reason.getMessage()));
+            }
+        }
+        StringBuilder builder = new StringBuilder("{");
+        for (Map.Entry<String, String> entry : args.entrySet()) {
+            if (builder.length() > 1) {
+                builder.append(',');
+            }
+            builder.append('"').append(entry.getKey()).append("\":").append(entry.getValue());
+        }
+        return builder.append('}').toString();
+    }
+
+    private static String toMicros(long nanos) {
+        return String.format(Locale.ROOT, "%.3f", nanos / 1e3);
+    }
+
+    private static String quote(String value) {
+        StringBuilder builder = new StringBuilder("\"");
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                builder.append('\\').append(c);
+            } else if (c < 0x20) {
+                builder.append(String.format("\\u%04x", (int) c));
+            } else {
+                builder.append(c);
+            }
+        }
+        return builder.append('"').toString();
+    }
+}
@@ -0,0 +1,10 @@
+package com.moekaku.tasuku;
+
+import java.util.concurrent.TimeUnit;
+
+public interface Watcher extends AutoCloseable {
+    boolean awaitChangesAndRebuild(long timeout, TimeUnit unit) throws InterruptedException;
+    void watch() throws InterruptedException;
+    @Override
+    void close();
+}
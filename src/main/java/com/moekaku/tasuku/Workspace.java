@@ -8,22 +8,40 @@ import org.slf4j.ILoggerFactory;
 
 import java.nio.file.FileSystem;
 import java.nio.file.Path;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
 
 public interface Workspace {
     String DEFAULT_ROOT = "ROOT0";
 
+    enum UpToDateCheck {
+        TIMESTAMP,
+        DIGEST
+    }
+
+    enum ExecutionMode {
+        PLATFORM_THREADS,
+        VIRTUAL_THREADS
+    }
+
     String resolveName(String name);
     boolean taskExists(String taskName);
     Task newCommandTask(String taskName, List<String> dependencies, Runnable action);
     FileTask newFileTask(String taskName, List<String> dependencies, Runnable action);
     void newPlaceholderTask(String taskName);
+    GraphBuilder newGraphBuilder();
+    void addTaskProvider(TaskProvider taskProvider);
     void startSession();
     void endSession();
     void run(String taskName);
+    BuildResult run(Collection<String> taskNames);
+    BuildPlan plan(Collection<String> taskNames);
+    Watcher watch(String taskName);
     boolean needsToRun(String taskName);
+    Optional<StaleReason> explain(String taskName);
     boolean canRun(String taskName);
     boolean isInSession();
     FileSystem getFileSystem();
@@ -31,11 +49,22 @@ public interface Workspace {
     Path getFilePath(String taskName);
     Map<String, String> getRoots();
     Set<String> getTaskNames();
+    Set<String> getDependents(String taskName);
+    Set<String> getAffectedTasks(Collection<String> taskNames);
+    Set<String> getAffectedTasks(Collection<String> taskNames, int maxDepth);
 
     interface Builder {
         Builder root(String shortName, String path);
         Builder loggerFactory(ILoggerFactory loggerFactory);
         Builder fileSystem(FileSystem fileSystem);
+        Builder threadCount(int threadCount);
+        Builder executionMode(ExecutionMode executionMode);
+        Builder cpuBoundLimit(int cpuBoundLimit);
+        Builder keepGoing(boolean keepGoing);
+        Builder upToDateCheck(UpToDateCheck upToDateCheck);
+        Builder buildDatabase(String fileName);
+        Builder tracer(BuildTracer tracer);
+        Builder artifactStore(ArtifactStore artifactStore);
         Workspace build();
     }
 
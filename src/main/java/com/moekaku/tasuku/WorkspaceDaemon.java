@@ -0,0 +1,288 @@
+package com.moekaku.tasuku;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Splitter;
+import com.google.common.io.BaseEncoding;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class WorkspaceDaemon implements AutoCloseable {
+    static final String RUN_COMMAND = "RUN";
+    static final String STOP_COMMAND = "STOP";
+    static final String ERROR_RESPONSE = "ERROR";
+    static final String END_RESPONSE = "END";
+    static final char SEPARATOR = '\t';
+    static final int READ_TIMEOUT_MILLIS = 10000;
+    static final int MAX_CONNECTIONS = 8;
+    private static final int TOKEN_BYTES = 32;
+
+    private static final Logger logger = LoggerFactory.getLogger(WorkspaceDaemon.class);
+
+    private final WorkspaceDefinition definition;
+    private final ServerSocket serverSocket;
+    private final Path tokenFile;
+    private final String token;
+    private final ExecutorService connectionExecutor;
+    private final AtomicInteger connectionNumber = new AtomicInteger(0);
+    private Workspace workspace;
+    private List<String> definitionFingerprint;
+    private int loadCount = 0;
+    private volatile boolean closed = false;
+
+    public WorkspaceDaemon(WorkspaceDefinition definition, int port, Path tokenFile) {
+        this.definition = Preconditions.checkNotNull(definition);
+        this.tokenFile = Preconditions.checkNotNull(tokenFile);
+        byte[] tokenBytes = new byte[TOKEN_BYTES];
+        new SecureRandom().nextBytes(tokenBytes);
+        this.token = BaseEncoding.base16().lowerCase().encode(tokenBytes);
+        writeTokenFile(tokenFile, token);
+        try {
+            this.serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+        } catch (IOException e) {
+            deleteTokenFile();
+            throw new RuntimeException(e);
+        }
+        this.connectionExecutor = new ThreadPoolExecutor(0, MAX_CONNECTIONS, 60, TimeUnit.SECONDS,
+                new SynchronousQueue<>(), runnable -> {
+                    Thread thread = new Thread(runnable, "tasuku-daemon-connection-" + connectionNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    private static void writeTokenFile(Path tokenFile, String token) {
+        try {
+            Path parent = tokenFile.toAbsolutePath().getParent();
+            if (parent != null) {
+                Files.createDirectories(parent);
+            }
+            Files.deleteIfExists(tokenFile);
+            if (tokenFile.getFileSystem().supportedFileAttributeViews().contains("posix")) {
+                Files.createFile(tokenFile, PosixFilePermissions.asFileAttribute(
+                        EnumSet.of(PosixFilePermission.OWNER_READ, PosixFilePermission.OWNER_WRITE)));
+            } else {
+                Files.createFile(tokenFile);
+            }
+            Files.write(tokenFile, token.getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private void deleteTokenFile() {
+        try {
+            Files.deleteIfExists(tokenFile);
+        } catch (IOException e) {
+            logger.warn("Could not delete the workspace daemon token file {}.", tokenFile, e);
+        }
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    public synchronized int getLoadCount() {
+        return loadCount;
+    }
+
+    public Thread start() {
+        Thread thread = new Thread(this::serve, "tasuku-daemon");
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+
+    public void serve() {
+        logger.info("Workspace daemon is listening on port {}.", getPort());
+        while (!closed) {
+            Socket socket;
+            try {
+                socket = serverSocket.accept();
+            } catch (SocketException e) {
+                if (!closed) {
+                    logger.warn("Workspace daemon connection failed.", e);
+                }
+                continue;
+            } catch (IOException e) {
+                logger.warn("Workspace daemon connection failed.", e);
+                continue;
+            }
+            try {
+                connectionExecutor.execute(() -> serveConnection(socket));
+            } catch (RejectedExecutionException e) {
+                reject(socket);
+            }
+        }
+    }
+
+    private void serveConnection(Socket socket) {
+        try (Socket connection = socket) {
+            connection.setSoTimeout(READ_TIMEOUT_MILLIS);
+            handle(connection);
+        } catch (SocketTimeoutException e) {
+            logger.warn("Workspace daemon client sent no request within {} ms.", READ_TIMEOUT_MILLIS);
+        } catch (IOException e) {
+            logger.warn("Workspace daemon connection failed.", e);
+        }
+    }
+
+    private void reject(Socket socket) {
+        try (Socket connection = socket) {
+            Writer writer = new BufferedWriter(
+                    new OutputStreamWriter(connection.getOutputStream(), StandardCharsets.UTF_8));
+            writeLine(writer, ERROR_RESPONSE, closed
+                    ? "The workspace daemon is shutting down."
+                    : "The workspace daemon is busy with " + MAX_CONNECTIONS + " connections.");
+            writeLine(writer, END_RESPONSE);
+            writer.flush();
+        } catch (IOException e) {
+            logger.warn("Workspace daemon connection failed.", e);
+        }
+    }
+
+    private void handle(Socket socket) throws IOException {
+        BufferedReader reader = new BufferedReader(
+                new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+        Writer writer = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+        String line = reader.readLine();
+        if (line == null) {
+            return;
+        }
+        List<String> fields = Splitter.on(SEPARATOR).splitToList(line);
+        if (fields.size() < 2 || !isValidToken(fields.get(0))) {
+            logger.warn("Workspace daemon rejected a request with an invalid token.");
+            writeLine(writer, ERROR_RESPONSE, "Invalid workspace daemon token.");
+            writeLine(writer, END_RESPONSE);
+            writer.flush();
+            return;
+        }
+        fields = fields.subList(1, fields.size());
+        String command = fields.get(0);
+        if (command.equals(STOP_COMMAND)) {
+            writeLine(writer, END_RESPONSE);
+            writer.flush();
+            close();
+        } else if (command.equals(RUN_COMMAND)) {
+            try {
+                BuildResult result = run(fields.subList(1, fields.size()));
+                for (String target : result.getTargets()) {
+                    Throwable failure = result.getFailure(target);
+                    writeLine(writer, result.getStatus(target).name(), target,
+                            failure == null ? null : String.valueOf(failure.getMessage()));
+                }
+            } catch (RuntimeException e) {
+                logger.warn("Workspace daemon could not run the requested tasks.", e);
+                writeLine(writer, ERROR_RESPONSE, String.valueOf(e.getMessage()));
+            }
+            writeLine(writer, END_RESPONSE);
+            writer.flush();
+        } else {
+            writeLine(writer, ERROR_RESPONSE, "Unknown command " + command);
+            writeLine(writer, END_RESPONSE);
+            writer.flush();
+        }
+    }
+
+    private boolean isValidToken(String candidate) {
+        return MessageDigest.isEqual(candidate.getBytes(StandardCharsets.UTF_8), token.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void writeLine(Writer writer, String... fields) throws IOException {
+        boolean first = true;
+        for (String field : fields) {
+            if (field == null) {
+                continue;
+            }
+            if (!first) {
+                writer.write(SEPARATOR);
+            }
+            writer.write(field.replace('\t', ' ').replace('\n', ' ').replace('\r', ' '));
+            first = false;
+        }
+        writer.write('\n');
+    }
+
+    public synchronized BuildResult run(List<String> taskNames) {
+        Preconditions.checkArgument(!taskNames.isEmpty(), "At least one task must be given.");
+        reloadIfDefinitionChanged();
+        workspace.startSession();
+        try {
+            return workspace.run(taskNames);
+        } finally {
+            workspace.endSession();
+        }
+    }
+
+    private void reloadIfDefinitionChanged() {
+        List<String> fingerprint = computeDefinitionFingerprint();
+        if (workspace == null || !fingerprint.equals(definitionFingerprint)) {
+            if (workspace != null) {
+                logger.info("Workspace definition changed. Reloading the workspace.");
+            }
+            workspace = definition.create();
+            definitionFingerprint = fingerprint;
+            loadCount++;
+        }
+    }
+
+    private List<String> computeDefinitionFingerprint() {
+        List<String> fingerprint = new ArrayList<>();
+        for (Path path : definition.getDefinitionFiles()) {
+            fingerprint.add(path.toString());
+            try {
+                BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+                fingerprint.add(attributes.lastModifiedTime().toMillis() + ":" + attributes.size());
+            } catch (NoSuchFileException e) {
+                fingerprint.add("");
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+        return fingerprint;
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        connectionExecutor.shutdown();
+        deleteTokenFile();
+        try {
+            serverSocket.close();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package com.moekaku.tasuku;
+
+import com.google.common.base.Joiner;
+import com.google.common.base.Splitter;
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.DefaultParser;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+public class WorkspaceDaemonClient {
+    private final int port;
+    private final Path tokenFile;
+
+    public WorkspaceDaemonClient(int port, Path tokenFile) {
+        this.port = port;
+        this.tokenFile = tokenFile;
+    }
+
+    public boolean run(List<String> taskNames, PrintStream out) {
+        boolean successful = true;
+        for (String line : send(WorkspaceDaemon.RUN_COMMAND + WorkspaceDaemon.SEPARATOR
+                + Joiner.on(WorkspaceDaemon.SEPARATOR).join(taskNames))) {
+            List<String> fields = Splitter.on(WorkspaceDaemon.SEPARATOR).splitToList(line);
+            if (!fields.get(0).equals(BuildResult.Status.SUCCEEDED.name())) {
+                successful = false;
+            }
+            out.println(Joiner.on(' ').join(fields));
+        }
+        return successful;
+    }
+
+    public void stop() {
+        send(WorkspaceDaemon.STOP_COMMAND);
+    }
+
+    private List<String> send(String request) {
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+            Writer writer = new BufferedWriter(
+                    new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+            writer.write(readToken());
+            writer.write(WorkspaceDaemon.SEPARATOR);
+            writer.write(request);
+            writer.write('\n');
+            writer.flush();
+            BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            ArrayList<String> lines = new ArrayList<>();
+            String line;
+            while ((line = reader.readLine()) != null && !line.equals(WorkspaceDaemon.END_RESPONSE)) {
+                lines.add(line);
+            }
+            if (line == null) {
+                throw new IllegalStateException("The workspace daemon closed the connection unexpectedly.");
+            }
+            return lines;
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private String readToken() throws IOException {
+        return new String(Files.readAllBytes(tokenFile), StandardCharsets.UTF_8).trim();
+    }
+
+    public static void main(String[] args) {
+        Options options = new Options();
+        options.addOption(Option.builder("p").longOpt("port").hasArg().required()
+                .desc("port the workspace daemon listens on").build());
+        options.addOption(Option.builder("t").longOpt("token-file").hasArg().required()
+                .desc("file the workspace daemon wrote its access token to").build());
+        options.addOption(Option.builder().longOpt("stop").desc("stop the workspace daemon").build());
+        CommandLine commandLine;
+        try {
+            commandLine = new DefaultParser().parse(options, args);
+        } catch (ParseException e) {
+            System.err.println(e.getMessage());
+            new HelpFormatter().printHelp("tasuku-client [options] task...", options);
+            System.exit(2);
+            return;
+        }
+        WorkspaceDaemonClient client = new WorkspaceDaemonClient(Integer.parseInt(commandLine.getOptionValue("port")),
+                Paths.get(commandLine.getOptionValue("token-file")));
+        if (commandLine.hasOption("stop")) {
+            client.stop();
+            return;
+        }
+        if (commandLine.getArgList().isEmpty()) {
+            new HelpFormatter().printHelp("tasuku-client [options] task...", options);
+            System.exit(2);
+        }
+        System.exit(client.run(commandLine.getArgList(), System.out) ? 0 : 1);
+    }
+}
@@ -0,0 +1,13 @@
+package com.moekaku.tasuku;
+
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+
+public interface WorkspaceDefinition {
+    Workspace create();
+
+    default List<Path> getDefinitionFiles() {
+        return Collections.emptyList();
+    }
+}
@@ -2,49 +2,83 @@ package com.moekaku.tasuku.impl;
 
 import com.moekaku.tasuku.Task;
 
-import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Path;
+import java.util.AbstractList;
 import java.util.List;
 import java.util.stream.Collectors;
 
 public abstract class AbstractTask implements Task {
     final WorkspaceImpl workspace;
-    private final String name;
-    private final List<String> dependencies;
+    private String pendingName;
+    private List<String> pendingDependencies;
+    int id = -1;
 
     AbstractTask(WorkspaceImpl workspace, String name, List<String> dependencies) {
         this.workspace = workspace;
-        this.name = workspace.resolveName(name);
-        this.dependencies = dependencies.stream()
+        this.pendingName = workspace.resolveName(name);
+        this.pendingDependencies = dependencies.stream()
                 .map(workspace::resolveName)
                 .collect(Collectors.toList());
     }
 
+    AbstractTask(WorkspaceImpl workspace) {
+        this.workspace = workspace;
+    }
+
+    AbstractTask(WorkspaceImpl workspace, int id) {
+        this.workspace = workspace;
+        this.id = id;
+    }
+
+    void registered(int id) {
+        this.id = id;
+        pendingName = null;
+        pendingDependencies = null;
+    }
+
     @Override
     public String getName() {
-        return name;
+        return id < 0 ? pendingName : workspace.getGraph().getName(id);
     }
 
     @Override
     public List<String> getDependencies() {
-        return dependencies;
-    }
-
-    long getFileLastModified(String taskName) {
-        Path path = workspace.getFilePath(taskName);
-        if (!Files.exists(path)) {
-            return Long.MAX_VALUE;
-        } else {
-            try {
-                return Files.getLastModifiedTime(path).toMillis();
-            } catch (IOException e) {
-                throw new RuntimeException(e);
-            }
+        if (id < 0) {
+            return pendingDependencies;
         }
+        TaskGraph graph = workspace.getGraph();
+        return new AbstractList<String>() {
+            @Override
+            public String get(int index) {
+                return graph.getName(graph.getDependency(id, index));
+            }
+
+            @Override
+            public int size() {
+                return graph.getDependencyCount(id);
+            }
+        };
+    }
+
+    @Override
+    public boolean needsToBeRun() {
+        return needsToBeRun(workspace.getStalenessCheck());
+    }
+
+    abstract boolean needsToBeRun(StalenessCheck check);
+
+    long getTimestamp(StalenessCheck check) {
+        return getTimestamp();
+    }
+
+    boolean isCpuBound() {
+        return false;
+    }
+
+    long getFileLastModified() {
+        return workspace.getFileStat(id).getLastModified();
     }
 
-    boolean fileExists(String taskName) {
-        return Files.exists(workspace.getFilePath(taskName));
+    boolean fileExists() {
+        return workspace.getFileStat(id).exists();
     }
 }
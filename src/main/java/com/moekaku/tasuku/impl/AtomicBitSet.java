@@ -0,0 +1,47 @@
+package com.moekaku.tasuku.impl;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+class AtomicBitSet {
+    private final AtomicLongArray words;
+
+    AtomicBitSet(int size) {
+        words = new AtomicLongArray((size + 63) >>> 6);
+    }
+
+    AtomicBitSet grow(int size) {
+        AtomicBitSet result = new AtomicBitSet(size);
+        for (int i = 0; i < words.length(); i++) {
+            result.words.set(i, words.get(i));
+        }
+        return result;
+    }
+
+    boolean get(int index) {
+        return (words.get(index >>> 6) & (1L << index)) != 0;
+    }
+
+    void set(int index) {
+        int wordIndex = index >>> 6;
+        long mask = 1L << index;
+        long word;
+        do {
+            word = words.get(wordIndex);
+            if ((word & mask) != 0) {
+                return;
+            }
+        } while (!words.compareAndSet(wordIndex, word, word | mask));
+    }
+
+    void clear(int index) {
+        int wordIndex = index >>> 6;
+        long mask = 1L << index;
+        long word;
+        do {
+            word = words.get(wordIndex);
+            if ((word & mask) == 0) {
+                return;
+            }
+        } while (!words.compareAndSet(wordIndex, word, word & ~mask));
+    }
+}
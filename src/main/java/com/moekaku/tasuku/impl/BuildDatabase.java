@@ -0,0 +1,271 @@
+package com.moekaku.tasuku.impl;
+
+import com.google.common.hash.HashCode;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+class BuildDatabase {
+    private static final int MAGIC = 0x5441534b;
+    private static final int VERSION = 2;
+    private static final int MIN_VERSION = 1;
+    private static final int DIGEST_RECORD = 'F';
+    private static final int TASK_RECORD = 'T';
+    private static final int DURATION_RECORD = 'D';
+    private static final int COMPACTION_SLACK = 1024;
+
+    private final Path path;
+    private BuildRecords records;
+    private DataOutputStream output;
+    private int recordCount = 0;
+    private boolean needsRewrite = false;
+
+    BuildDatabase(Path path) {
+        this.path = path;
+    }
+
+    synchronized void load(BuildRecords records) {
+        this.records = records;
+        if (!Files.exists(path)) {
+            return;
+        }
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            if (input.readInt() != MAGIC) {
+                needsRewrite = true;
+                return;
+            }
+            int version = input.readInt();
+            if (version < MIN_VERSION || version > VERSION) {
+                needsRewrite = true;
+                return;
+            }
+            if (version != VERSION) {
+                needsRewrite = true;
+            }
+            while (true) {
+                int type = input.read();
+                if (type == -1) {
+                    break;
+                } else if (type == DIGEST_RECORD) {
+                    String name = input.readUTF();
+                    long size = input.readLong();
+                    long lastModified = input.readLong();
+                    HashCode hash = readHash(input);
+                    records.putDigest(name, new BuildRecords.FileDigest(size, lastModified, hash));
+                } else if (type == TASK_RECORD) {
+                    String name = input.readUTF();
+                    records.putTaskRecord(name, readTaskRecord(input));
+                } else if (type == DURATION_RECORD) {
+                    String name = input.readUTF();
+                    records.putDuration(name, input.readLong());
+                } else {
+                    needsRewrite = true;
+                    break;
+                }
+                recordCount++;
+            }
+        } catch (EOFException e) {
+            needsRewrite = true;
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    synchronized void appendDigest(String resolvedName, BuildRecords.FileDigest digest) {
+        try {
+            DataOutputStream out = ensureOpen();
+            out.write(DIGEST_RECORD);
+            writeDigest(out, resolvedName, digest);
+            recordCount++;
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    synchronized void appendTaskRecord(String resolvedTaskName, BuildRecords.TaskRecord record) {
+        try {
+            DataOutputStream out = ensureOpen();
+            out.write(TASK_RECORD);
+            writeTaskRecord(out, resolvedTaskName, record);
+            recordCount++;
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    synchronized void appendDuration(String resolvedTaskName, long duration) {
+        try {
+            DataOutputStream out = ensureOpen();
+            out.write(DURATION_RECORD);
+            out.writeUTF(resolvedTaskName);
+            out.writeLong(duration);
+            recordCount++;
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    synchronized void flush() {
+        if (output == null) {
+            return;
+        }
+        try {
+            output.flush();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    synchronized void close() {
+        try {
+            if (output != null) {
+                output.close();
+                output = null;
+            }
+            if (needsRewrite || recordCount > 2 * records.size() + COMPACTION_SLACK) {
+                writeSnapshot();
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private DataOutputStream ensureOpen() throws IOException {
+        if (output == null) {
+            if (needsRewrite || !Files.exists(path)) {
+                writeSnapshot();
+            }
+            output = new DataOutputStream(new BufferedOutputStream(
+                    Files.newOutputStream(path, StandardOpenOption.APPEND)));
+        }
+        return output;
+    }
+
+    private void writeSnapshot() throws IOException {
+        Path parent = path.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        Path tempPath = path.resolveSibling(path.getFileName() + ".tmp");
+        int count = 0;
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempPath)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            for (Map.Entry<String, BuildRecords.FileDigest> entry : records.getDigests().entrySet()) {
+                out.write(DIGEST_RECORD);
+                writeDigest(out, entry.getKey(), entry.getValue());
+                count++;
+            }
+            for (Map.Entry<String, BuildRecords.TaskRecord> entry : records.getTaskRecords().entrySet()) {
+                out.write(TASK_RECORD);
+                writeTaskRecord(out, entry.getKey(), entry.getValue());
+                count++;
+            }
+            for (Map.Entry<String, Long> entry : records.getDurations().entrySet()) {
+                out.write(DURATION_RECORD);
+                out.writeUTF(entry.getKey());
+                out.writeLong(entry.getValue());
+                count++;
+            }
+        }
+        try {
+            Files.move(tempPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tempPath, path, StandardCopyOption.REPLACE_EXISTING);
+        }
+        recordCount = count;
+        needsRewrite = false;
+    }
+
+    private static void writeDigest(DataOutputStream out, String name, BuildRecords.FileDigest digest)
+            throws IOException {
+        out.writeUTF(name);
+        out.writeLong(digest.getSize());
+        out.writeLong(digest.getLastModified());
+        writeHash(out, digest.getHash());
+    }
+
+    private static void writeTaskRecord(DataOutputStream out, String name, BuildRecords.TaskRecord record)
+            throws IOException {
+        out.writeUTF(name);
+        out.writeLong(record.getLastRun());
+        writeNullableString(out, record.getActionIdentity());
+        out.writeInt(record.getDependencies().size());
+        for (String dep : record.getDependencies()) {
+            out.writeUTF(dep);
+        }
+        Map<String, HashCode> inputDigests = record.getInputDigests();
+        out.writeBoolean(inputDigests != null);
+        if (inputDigests != null) {
+            out.writeInt(inputDigests.size());
+            for (Map.Entry<String, HashCode> entry : inputDigests.entrySet()) {
+                out.writeUTF(entry.getKey());
+                writeHash(out, entry.getValue());
+            }
+        }
+    }
+
+    private static BuildRecords.TaskRecord readTaskRecord(DataInputStream input) throws IOException {
+        long lastRun = input.readLong();
+        String actionIdentity = readNullableString(input);
+        int dependencyCount = input.readInt();
+        List<String> dependencies = new ArrayList<>(dependencyCount);
+        for (int i = 0; i < dependencyCount; i++) {
+            dependencies.add(input.readUTF());
+        }
+        Map<String, HashCode> inputDigests = null;
+        if (input.readBoolean()) {
+            int digestCount = input.readInt();
+            inputDigests = new LinkedHashMap<>();
+            for (int i = 0; i < digestCount; i++) {
+                String name = input.readUTF();
+                inputDigests.put(name, readHash(input));
+            }
+        }
+        return new BuildRecords.TaskRecord(lastRun, actionIdentity, dependencies, inputDigests);
+    }
+
+    private static void writeHash(DataOutputStream out, HashCode hash) throws IOException {
+        if (hash == null) {
+            out.writeInt(-1);
+        } else {
+            byte[] bytes = hash.asBytes();
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    private static HashCode readHash(DataInputStream input) throws IOException {
+        int length = input.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        input.readFully(bytes);
+        return HashCode.fromBytes(bytes);
+    }
+
+    private static void writeNullableString(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readNullableString(DataInputStream input) throws IOException {
+        return input.readBoolean() ? input.readUTF() : null;
+    }
+}
@@ -0,0 +1,165 @@
+package com.moekaku.tasuku.impl;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import com.google.common.io.MoreFiles;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+class BuildRecords {
+    private final ConcurrentHashMap<String, FileDigest> resolvedNameToDigest = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, TaskRecord> resolvedNameToTaskRecord = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Long> resolvedNameToDuration = new ConcurrentHashMap<>();
+    private final BuildDatabase database;
+
+    BuildRecords(BuildDatabase database) {
+        this.database = database;
+    }
+
+    HashCode getDigest(String resolvedName, Path path, FileStat stat) {
+        if (!stat.exists()) {
+            return null;
+        }
+        FileDigest digest = resolvedNameToDigest.get(resolvedName);
+        if (digest == null || !digest.matches(stat)) {
+            digest = new FileDigest(stat.getSize(), stat.getLastModified(), hash(path));
+            putDigest(resolvedName, digest);
+            if (database != null) {
+                database.appendDigest(resolvedName, digest);
+            }
+        }
+        return digest.getHash();
+    }
+
+    TaskRecord getTaskRecord(String resolvedTaskName) {
+        return resolvedNameToTaskRecord.get(resolvedTaskName);
+    }
+
+    void setTaskRecord(String resolvedTaskName, TaskRecord record) {
+        putTaskRecord(resolvedTaskName, record);
+        if (database != null) {
+            database.appendTaskRecord(resolvedTaskName, record);
+        }
+    }
+
+    long getDuration(String resolvedTaskName, long defaultDuration) {
+        Long duration = resolvedNameToDuration.get(resolvedTaskName);
+        return duration == null ? defaultDuration : duration;
+    }
+
+    void setDuration(String resolvedTaskName, long duration) {
+        putDuration(resolvedTaskName, duration);
+        if (database != null) {
+            database.appendDuration(resolvedTaskName, duration);
+        }
+    }
+
+    void putDigest(String resolvedName, FileDigest digest) {
+        resolvedNameToDigest.put(resolvedName, digest);
+    }
+
+    void putTaskRecord(String resolvedTaskName, TaskRecord record) {
+        resolvedNameToTaskRecord.put(resolvedTaskName, record);
+    }
+
+    void putDuration(String resolvedTaskName, long duration) {
+        resolvedNameToDuration.put(resolvedTaskName, duration);
+    }
+
+    Map<String, FileDigest> getDigests() {
+        return resolvedNameToDigest;
+    }
+
+    Map<String, TaskRecord> getTaskRecords() {
+        return resolvedNameToTaskRecord;
+    }
+
+    Map<String, Long> getDurations() {
+        return resolvedNameToDuration;
+    }
+
+    int size() {
+        return resolvedNameToDigest.size() + resolvedNameToTaskRecord.size() + resolvedNameToDuration.size();
+    }
+
+    private static HashCode hash(Path path) {
+        try {
+            return MoreFiles.asByteSource(path).hash(Hashing.sha256());
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    static final class FileDigest {
+        private final long size;
+        private final long lastModified;
+        private final HashCode hash;
+
+        FileDigest(long size, long lastModified, HashCode hash) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.hash = hash;
+        }
+
+        boolean matches(FileStat stat) {
+            return stat.getSize() == size && stat.getLastModified() == lastModified;
+        }
+
+        long getSize() {
+            return size;
+        }
+
+        long getLastModified() {
+            return lastModified;
+        }
+
+        HashCode getHash() {
+            return hash;
+        }
+    }
+
+    static final class TaskRecord {
+        private final long lastRun;
+        private final String actionIdentity;
+        private final List<String> dependencies;
+        private final Map<String, HashCode> inputDigests;
+
+        TaskRecord(long lastRun, String actionIdentity, List<String> dependencies,
+                   Map<String, HashCode> inputDigests) {
+            this.lastRun = lastRun;
+            this.actionIdentity = actionIdentity;
+            this.dependencies = ImmutableList.copyOf(dependencies);
+            this.inputDigests = inputDigests == null
+                    ? null
+                    : Collections.unmodifiableMap(new LinkedHashMap<>(inputDigests));
+        }
+
+        long getLastRun() {
+            return lastRun;
+        }
+
+        String getActionIdentity() {
+            return actionIdentity;
+        }
+
+        List<String> getDependencies() {
+            return dependencies;
+        }
+
+        Map<String, HashCode> getInputDigests() {
+            return inputDigests;
+        }
+
+        boolean sameDefinition(List<String> dependencies, String actionIdentity) {
+            return this.dependencies.equals(dependencies) && Objects.equals(this.actionIdentity, actionIdentity);
+        }
+    }
+}
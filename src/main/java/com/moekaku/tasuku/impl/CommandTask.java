@@ -1,5 +1,8 @@
 package com.moekaku.tasuku.impl;
 
+import com.moekaku.tasuku.Action;
+import com.moekaku.tasuku.StaleReason;
+
 import java.util.List;
 
 public class CommandTask extends AbstractTask {
@@ -10,6 +13,11 @@ public class CommandTask extends AbstractTask {
         this.action = action;
     }
 
+    CommandTask(WorkspaceImpl workspace, Runnable action) {
+        super(workspace);
+        this.action = action;
+    }
+
     @Override
     public long getTimestamp() {
         return Long.MAX_VALUE;
@@ -20,13 +28,19 @@ public class CommandTask extends AbstractTask {
         return true;
     }
 
+    @Override
+    boolean isCpuBound() {
+        return action instanceof Action && ((Action) action).isCpuBound();
+    }
+
     @Override
     public void run() {
         if (action != null) action.run();
     }
 
     @Override
-    public boolean needsToBeRun() {
+    boolean needsToBeRun(StalenessCheck check) {
+        check.setReason(id, StaleReason.Kind.COMMAND, -1);
         return true;
     }
 }
@@ -0,0 +1,62 @@
+package com.moekaku.tasuku.impl;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Objects;
+
+final class FileStat {
+    static final FileStat MISSING = new FileStat(false, Long.MAX_VALUE, -1);
+
+    private final boolean exists;
+    private final long lastModified;
+    private final long size;
+
+    private FileStat(boolean exists, long lastModified, long size) {
+        this.exists = exists;
+        this.lastModified = lastModified;
+        this.size = size;
+    }
+
+    static FileStat read(Path path) {
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            return new FileStat(true, attributes.lastModifiedTime().toMillis(), attributes.size());
+        } catch (NoSuchFileException e) {
+            return MISSING;
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    boolean exists() {
+        return exists;
+    }
+
+    long getLastModified() {
+        return lastModified;
+    }
+
+    long getSize() {
+        return size;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) {
+            return true;
+        }
+        if (!(other instanceof FileStat)) {
+            return false;
+        }
+        FileStat stat = (FileStat) other;
+        return exists == stat.exists && lastModified == stat.lastModified && size == stat.size;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(exists, lastModified, size);
+    }
+}
@@ -1,27 +1,51 @@
 package com.moekaku.tasuku.impl;
 
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.moekaku.tasuku.Action;
+import com.moekaku.tasuku.ArtifactStore;
+import com.moekaku.tasuku.StaleReason;
 import com.moekaku.tasuku.Task;
-import org.slf4j.ILoggerFactory;
+import com.moekaku.tasuku.Workspace;
 import org.slf4j.Logger;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.DosFileAttributeView;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
 
 public class FileTask extends AbstractTask {
     private final Runnable action;
-    private final Logger logger;
 
     FileTask(WorkspaceImpl workspace,
              String name,
-             List<String> dependencies, Runnable action,
-             ILoggerFactory loggerFactory) {
+             List<String> dependencies, Runnable action) {
         super(workspace, name, dependencies);
         this.action = action;
-        this.logger = loggerFactory.getLogger(getClass().getName());
+    }
+
+    FileTask(WorkspaceImpl workspace, Runnable action) {
+        super(workspace);
+        this.action = action;
+    }
+
+    private Logger getLogger() {
+        return workspace.getFileTaskLogger();
     }
 
     @Override
     public long getTimestamp() {
-        return getFileLastModified(getName());
+        return getFileLastModified();
     }
 
     @Override
@@ -29,43 +53,206 @@ public class FileTask extends AbstractTask {
         return true;
     }
 
+    @Override
+    boolean isCpuBound() {
+        return action instanceof Action && ((Action) action).isCpuBound();
+    }
+
     @Override
     public void run() {
+        ArtifactStore artifactStore = workspace.getArtifactStore();
+        String artifactKey = artifactStore == null ? null : getArtifactKey();
+        if (artifactKey != null) {
+            if (restoreArtifact(artifactStore, artifactKey)) {
+                return;
+            }
+            detachReadOnlyOutput();
+        }
         if (action != null) action.run();
+        if (artifactKey != null) {
+            storeArtifact(artifactStore, artifactKey);
+        }
+    }
+
+    String getArtifactKey() {
+        String actionIdentity = getActionIdentity();
+        if (actionIdentity == null) {
+            return null;
+        }
+        Map<String, HashCode> inputDigests = computeInputDigests(workspace.getStalenessCheck());
+        if (inputDigests == null || inputDigests.containsValue(null)) {
+            return null;
+        }
+        Hasher hasher = Hashing.sha256().newHasher()
+                .putString(workspace.getPortableName(getName()), StandardCharsets.UTF_8)
+                .putByte((byte) 0)
+                .putString(actionIdentity, StandardCharsets.UTF_8);
+        TreeMap<String, HashCode> portableDigests = new TreeMap<>();
+        inputDigests.forEach((name, digest) -> portableDigests.put(workspace.getPortableName(name), digest));
+        for (Map.Entry<String, HashCode> entry : portableDigests.entrySet()) {
+            hasher.putByte((byte) 0)
+                    .putString(entry.getKey(), StandardCharsets.UTF_8)
+                    .putByte((byte) 0)
+                    .putBytes(entry.getValue().asBytes());
+        }
+        return hasher.hash().toString();
+    }
+
+    private boolean restoreArtifact(ArtifactStore artifactStore, String artifactKey) {
+        Path path = workspace.getFilePath(getName());
+        try {
+            if (!artifactStore.restore(artifactKey, path)) {
+                return false;
+            }
+        } catch (RuntimeException e) {
+            getLogger().warn("Task {} could not be restored from the artifact store.", getName(), e);
+            return false;
+        }
+        getLogger().info("Task {} was restored from the artifact store.", getName());
+        return true;
+    }
+
+    // An output restored in link mode is a read-only link to a store entry. Give the action a writable copy
+    // instead, so that rewriting or appending to it cannot change the entry. Other outputs are left alone.
+    private void detachReadOnlyOutput() {
+        Path path = workspace.getFilePath(getName());
+        try {
+            if (!Files.isRegularFile(path) || !isReadOnly(path)) {
+                return;
+            }
+            Path copy = Files.createTempFile(path.toAbsolutePath().getParent(), path.getFileName().toString(), ".tmp");
+            try {
+                Files.copy(path, copy, StandardCopyOption.REPLACE_EXISTING);
+                Files.move(copy, path, StandardCopyOption.REPLACE_EXISTING);
+            } finally {
+                Files.deleteIfExists(copy);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static boolean isReadOnly(Path path) throws IOException {
+        PosixFileAttributeView posixView = Files.getFileAttributeView(path, PosixFileAttributeView.class);
+        if (posixView != null) {
+            return !posixView.readAttributes().permissions().contains(PosixFilePermission.OWNER_WRITE);
+        }
+        DosFileAttributeView dosView = Files.getFileAttributeView(path, DosFileAttributeView.class);
+        return dosView != null && dosView.readAttributes().isReadOnly();
+    }
+
+    private void storeArtifact(ArtifactStore artifactStore, String artifactKey) {
+        Path path = workspace.getFilePath(getName());
+        if (!Files.isRegularFile(path)) {
+            return;
+        }
+        try {
+            artifactStore.store(artifactKey, path);
+        } catch (RuntimeException e) {
+            getLogger().warn("Task {} could not be saved to the artifact store.", getName(), e);
+        }
+    }
+
+    @Override
+    long getTimestamp(StalenessCheck check) {
+        return check.getFileStat(id).getLastModified();
     }
 
     @Override
-    public boolean needsToBeRun() {
-        if (!fileExists(getName())) {
-            logger.info(String.format(
-                    "Task %s will be run because the corresponding file does not exists.",
-                    getName()));
+    boolean needsToBeRun(StalenessCheck check) {
+        check.clearReason(id);
+        if (!check.getFileStat(id).exists()) {
+            reportStale(check, StaleReason.Kind.FILE_MISSING, -1);
+            return true;
+        }
+        TaskGraph graph = workspace.getGraph();
+        for (int i = 0; i < graph.getDependencyCount(id); i++) {
+            int dep = graph.getDependency(id, i);
+            if (check.needsToRun(dep)) {
+                reportStale(check, StaleReason.Kind.DEPENDENCY_STALE, dep);
+                return true;
+            }
+        }
+        BuildRecords.TaskRecord record = workspace.getBuildRecords().getTaskRecord(getName());
+        if (record == null) {
+            return dependencyIsNewer(check);
+        } else if (!record.sameDefinition(getDependencies(), getActionIdentity())) {
+            reportStale(check, StaleReason.Kind.DEFINITION_CHANGED, -1);
             return true;
+        } else if (workspace.getUpToDateCheck() == Workspace.UpToDateCheck.DIGEST
+                && record.getInputDigests() != null) {
+            return inputDigestsChanged(check, record.getInputDigests());
         } else {
-            for (String dep : getDependencies()) {
-                if (workspace.needsToRun(dep)) {
-                    logger.info(String.format(
-                            "Task  %s will be run because dependency %s also needs to be run.",
-                            getName(), dep));
+            return dependencyIsNewer(check);
+        }
+    }
+
+    private void reportStale(StalenessCheck check, StaleReason.Kind kind, int relatedId) {
+        check.setReason(id, kind, relatedId);
+        if (!check.isDryRun() && getLogger().isInfoEnabled()) {
+            getLogger().info(check.getReason(id).getMessage());
+        }
+    }
+
+    public String getActionIdentity() {
+        return action instanceof Action ? ((Action) action).getIdentity() : null;
+    }
+
+    private boolean dependencyIsNewer(StalenessCheck check) {
+        long selfTimestamp = getTimestamp(check);
+        TaskGraph graph = workspace.getGraph();
+        for (int i = 0; i < graph.getDependencyCount(id); i++) {
+            int dep = graph.getDependency(id, i);
+            if (graph.isPlaceholder(dep)) {
+                if (check.getFileStat(dep).getLastModified() > selfTimestamp) {
+                    reportStale(check, StaleReason.Kind.DEPENDENCY_NEWER, dep);
                     return true;
-                } else {
-                    long selfTimestamp = getTimestamp();
-                    Task depTask = workspace.getTask(dep);
-                    if (depTask.getTimestamp() > selfTimestamp) {
-                        if (depTask instanceof FileTask || depTask instanceof PlaceholderTask) {
-                            logger.info(String.format(
-                                    "Task %s needs to be run because task %s has later time stamp.",
-                                    getName(), dep));
-                        } else if (depTask instanceof CommandTask) {
-                            logger.info(String.format(
-                                    "Task %s needs to be run because task %s is a command.",
-                                    getName(), dep));
-                        }
-                        return true;
-                    }
                 }
+                continue;
             }
-            return false;
+            AbstractTask depTask = graph.getTask(dep);
+            if (depTask.getTimestamp(check) > selfTimestamp) {
+                reportStale(check, depTask instanceof CommandTask
+                        ? StaleReason.Kind.DEPENDENCY_IS_COMMAND
+                        : StaleReason.Kind.DEPENDENCY_NEWER, dep);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean inputDigestsChanged(StalenessCheck check, Map<String, HashCode> recorded) {
+        Map<String, HashCode> current = computeInputDigests(check);
+        if (current == null) {
+            return dependencyIsNewer(check);
+        }
+        for (Map.Entry<String, HashCode> entry : current.entrySet()) {
+            if (!Objects.equals(entry.getValue(), recorded.get(entry.getKey()))) {
+                reportStale(check, StaleReason.Kind.INPUT_CONTENT_CHANGED, workspace.getGraph().getId(entry.getKey()));
+                return true;
+            }
+        }
+        return false;
+    }
+
+    void recordRun(long time) {
+        Map<String, HashCode> inputDigests = workspace.getUpToDateCheck() == Workspace.UpToDateCheck.DIGEST
+                ? computeInputDigests(workspace.getStalenessCheck())
+                : null;
+        workspace.getBuildRecords().setTaskRecord(getName(),
+                new BuildRecords.TaskRecord(time, getActionIdentity(), getDependencies(), inputDigests));
+    }
+
+    private Map<String, HashCode> computeInputDigests(StalenessCheck check) {
+        LinkedHashMap<String, HashCode> digests = new LinkedHashMap<>();
+        TaskGraph graph = workspace.getGraph();
+        for (int i = 0; i < graph.getDependencyCount(id); i++) {
+            int dep = graph.getDependency(id, i);
+            if (!graph.isPlaceholder(dep) && graph.getTask(dep) instanceof CommandTask) {
+                return null;
+            }
+            digests.put(graph.getName(dep), check.getFileDigest(dep));
         }
+        return digests;
     }
 }
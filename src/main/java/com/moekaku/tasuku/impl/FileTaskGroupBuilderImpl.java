@@ -14,6 +14,7 @@ public class FileTaskGroupBuilderImpl implements FileTaskGroupBuilder {
     private final Workspace ws;
     private final String resolvedPrefix;
     private final HashMap<String, ArrayList<String>> fileTaskGroups = new HashMap<>();
+    private final HashMap<String, ArrayList<String>> ownedDirectories = new HashMap<>();
 
     public FileTaskGroupBuilderImpl(Workspace ws, String prefix) {
         this.ws = ws;
@@ -42,6 +43,15 @@ public class FileTaskGroupBuilderImpl implements FileTaskGroupBuilder {
         }
     }
 
+    @Override
+    public void ownDirectory(String group, String directoryName) {
+        String resolvedName = ws.resolveName(directoryName);
+        if (resolvedName.endsWith("/")) {
+            resolvedName = resolvedName.substring(0, resolvedName.length() - 1);
+        }
+        ownedDirectories.computeIfAbsent(group, key -> new ArrayList<>()).add(Workspace.getFileName(resolvedName));
+    }
+
     @Override
     public String getResolvedPrefix() {
         return resolvedPrefix;
@@ -53,8 +63,13 @@ public class FileTaskGroupBuilderImpl implements FileTaskGroupBuilder {
             ArrayList<String> taskNames = entry.getValue();
             if (taskNames.size() > 0) {
                 ws.newCommandTask(resolvedPrefix + "/" + name, taskNames, null);
-                TaskUtil.createDeleteAllTask(ws, resolvedPrefix + "/" + name + "_clean",
-                        taskNames.stream().map(Workspace::getFileName).collect(Collectors.toList()));
+                List<String> directories = ownedDirectories.getOrDefault(name, new ArrayList<>());
+                List<String> files = taskNames.stream()
+                        .map(Workspace::getFileName)
+                        .filter(fileName -> directories.stream().noneMatch(dir -> fileName.startsWith(dir + "/")))
+                        .collect(Collectors.toList());
+                TaskUtil.createDeleteAllTask(ws, resolvedPrefix + "/" + name + "_clean", files, directories,
+                        TaskUtil.DEFAULT_DELETE_CONCURRENCY);
             }
         }
     }
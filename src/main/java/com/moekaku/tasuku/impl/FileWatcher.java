@@ -0,0 +1,220 @@
+package com.moekaku.tasuku.impl;
+
+import com.google.common.base.Preconditions;
+import com.moekaku.tasuku.Watcher;
+import org.slf4j.Logger;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+class FileWatcher implements Watcher {
+    private static final long SETTLE_MILLIS = 50;
+
+    private final WorkspaceImpl workspace;
+    private final TaskGraph graph;
+    private final int target;
+    private final Logger logger;
+    private final WatchService watchService;
+    private final HashMap<WatchKey, Path> keyToDirectory = new HashMap<>();
+    private final HashMap<Path, Integer> pathToId = new HashMap<>();
+    private final HashSet<Path> watchedDirectories = new HashSet<>();
+    private final HashSet<Path> missingDirectories = new HashSet<>();
+    private final BitSet watched = new BitSet();
+    private FileStat[] knownStats = new FileStat[0];
+    private int[] watchedIds;
+    private volatile boolean closed = false;
+
+    FileWatcher(WorkspaceImpl workspace, int target) {
+        this.workspace = workspace;
+        this.graph = workspace.getGraph();
+        this.target = target;
+        this.logger = workspace.getLoggerFactory().getLogger(getClass().getName());
+        try {
+            this.watchService = workspace.getFileSystem().newWatchService();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        try {
+            workspace.startSession();
+            try {
+                rebuild();
+                register();
+            } catch (RuntimeException e) {
+                workspace.endSession();
+                throw e;
+            }
+        } catch (RuntimeException e) {
+            try {
+                watchService.close();
+            } catch (IOException closeException) {
+                e.addSuppressed(closeException);
+            }
+            throw e;
+        }
+    }
+
+    // Called after every rebuild, because providers can materialize new dependencies of the target.
+    private void register() {
+        watchedIds = graph.postOrder(target);
+        if (knownStats.length < graph.size()) {
+            knownStats = Arrays.copyOf(knownStats, graph.size());
+        }
+        for (int id : watchedIds) {
+            if (watched.get(id)) {
+                continue;
+            }
+            watched.set(id);
+            Path path = workspace.getFilePath(graph.getName(id)).toAbsolutePath().normalize();
+            pathToId.put(path, id);
+            knownStats[id] = workspace.getFileStat(id);
+            Path directory = path.getParent();
+            if (directory != null && watchedDirectories.add(directory)) {
+                watchDirectory(directory);
+            }
+        }
+    }
+
+    private boolean watchDirectory(Path directory) {
+        Path existing = directory;
+        while (existing != null && !Files.isDirectory(existing)) {
+            existing = existing.getParent();
+        }
+        if (existing == null) {
+            logger.warn("Neither directory {} nor any of its ancestors exists, so it will not be watched.", directory);
+            return false;
+        }
+        try {
+            WatchKey key = existing.register(watchService,
+                    StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY,
+                    StandardWatchEventKinds.ENTRY_DELETE);
+            keyToDirectory.put(key, existing);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        if (existing.equals(directory)) {
+            missingDirectories.remove(directory);
+            return true;
+        } else {
+            missingDirectories.add(directory);
+            return false;
+        }
+    }
+
+    private void watchCreatedDirectory(Path created, BitSet changed) {
+        for (Path directory : new ArrayList<>(missingDirectories)) {
+            if (!directory.startsWith(created) || !watchDirectory(directory)) {
+                continue;
+            }
+            for (Map.Entry<Path, Integer> entry : pathToId.entrySet()) {
+                if (directory.equals(entry.getKey().getParent())) {
+                    changed.set(entry.getValue());
+                }
+            }
+        }
+    }
+
+    @Override
+    public boolean awaitChangesAndRebuild(long timeout, TimeUnit unit) throws InterruptedException {
+        Preconditions.checkState(!closed, "The watcher is already closed.");
+        BitSet changed = new BitSet(graph.size());
+        try {
+            WatchKey key = watchService.poll(timeout, unit);
+            while (key != null) {
+                collectChanges(key, changed);
+                key = watchService.poll(SETTLE_MILLIS, TimeUnit.MILLISECONDS);
+            }
+        } catch (ClosedWatchServiceException e) {
+            return false;
+        }
+        synchronized (this) {
+            if (closed) {
+                return false;
+            }
+            int[] changedIds = changed.stream()
+                    .filter(id -> !FileStat.read(workspace.getFilePath(graph.getName(id))).equals(knownStats[id]))
+                    .toArray();
+            if (changedIds.length == 0) {
+                return false;
+            }
+            int[] affected = graph.dependentClosure(changedIds);
+            for (int id : affected) {
+                workspace.invalidate(id);
+            }
+            rebuild();
+            for (int id : affected) {
+                if (id < knownStats.length && knownStats[id] != null) {
+                    knownStats[id] = workspace.getFileStat(id);
+                }
+            }
+            register();
+            return true;
+        }
+    }
+
+    private void collectChanges(WatchKey key, BitSet changed) {
+        Path directory = keyToDirectory.get(key);
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                for (int id : watchedIds) {
+                    changed.set(id);
+                }
+            } else if (directory != null) {
+                Path path = directory.resolve((Path) event.context()).normalize();
+                Integer id = pathToId.get(path);
+                if (id != null) {
+                    changed.set(id);
+                }
+                if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && !missingDirectories.isEmpty()) {
+                    watchCreatedDirectory(path, changed);
+                }
+            }
+        }
+        key.reset();
+    }
+
+    private void rebuild() {
+        try {
+            workspace.run(graph.getName(target));
+        } catch (RuntimeException e) {
+            logger.error("Task {} failed to build.", graph.getName(target), e);
+        }
+    }
+
+    @Override
+    public void watch() throws InterruptedException {
+        while (!closed) {
+            awaitChangesAndRebuild(1, TimeUnit.HOURS);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            watchService.close();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        } finally {
+            synchronized (this) {
+                workspace.endSession();
+            }
+        }
+    }
+}
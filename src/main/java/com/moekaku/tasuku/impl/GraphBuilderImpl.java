@@ -0,0 +1,66 @@
+package com.moekaku.tasuku.impl;
+
+import com.moekaku.tasuku.GraphBuilder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class GraphBuilderImpl implements GraphBuilder {
+    private final WorkspaceImpl workspace;
+    private final ArrayList<AbstractTask> tasks = new ArrayList<>();
+    private final ArrayList<String> taskNames = new ArrayList<>();
+    private final ArrayList<List<String>> taskDependencies = new ArrayList<>();
+    private final ArrayList<String> placeholderNames = new ArrayList<>();
+    private int edgeCount = 0;
+
+    GraphBuilderImpl(WorkspaceImpl workspace) {
+        this.workspace = workspace;
+    }
+
+    @Override
+    public GraphBuilder fileTask(String taskName, List<String> dependencies, Runnable action) {
+        return add(new FileTask(workspace, action), taskName, dependencies);
+    }
+
+    @Override
+    public GraphBuilder commandTask(String taskName, List<String> dependencies, Runnable action) {
+        return add(new CommandTask(workspace, action), taskName, dependencies);
+    }
+
+    @Override
+    public GraphBuilder placeholderTask(String taskName) {
+        placeholderNames.add(workspace.resolveName(taskName));
+        return this;
+    }
+
+    private GraphBuilder add(AbstractTask task, String taskName, List<String> dependencies) {
+        String[] resolvedDependencies = new String[dependencies.size()];
+        for (int i = 0; i < resolvedDependencies.length; i++) {
+            resolvedDependencies[i] = workspace.resolveName(dependencies.get(i));
+        }
+        tasks.add(task);
+        taskNames.add(workspace.resolveName(taskName));
+        taskDependencies.add(Arrays.asList(resolvedDependencies));
+        edgeCount += resolvedDependencies.length;
+        return this;
+    }
+
+    @Override
+    public int size() {
+        return tasks.size();
+    }
+
+    @Override
+    public void publish() {
+        try {
+            workspace.publish(tasks, taskNames, taskDependencies, placeholderNames, edgeCount);
+        } finally {
+            tasks.clear();
+            taskNames.clear();
+            taskDependencies.clear();
+            placeholderNames.clear();
+            edgeCount = 0;
+        }
+    }
+}
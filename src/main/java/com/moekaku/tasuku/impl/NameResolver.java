@@ -0,0 +1,106 @@
+package com.moekaku.tasuku.impl;
+
+import com.moekaku.tasuku.Workspace;
+
+import java.util.Arrays;
+import java.util.Map;
+
+class NameResolver {
+    private final TrieNode rootTrie = new TrieNode();
+    private final String defaultRootPrefix;
+
+    NameResolver(Map<String, String> rootPaths) {
+        for (Map.Entry<String, String> entry : rootPaths.entrySet()) {
+            TrieNode node = rootTrie;
+            String rootName = entry.getKey();
+            for (int i = 0; i < rootName.length(); i++) {
+                node = node.getOrCreateChild(rootName.charAt(i));
+            }
+            node.prefix = "//" + entry.getValue();
+        }
+        String defaultRootPath = rootPaths.get(Workspace.DEFAULT_ROOT);
+        defaultRootPrefix = defaultRootPath == null ? null : "//" + defaultRootPath;
+    }
+
+    String resolve(String name) {
+        return resolve(name, null);
+    }
+
+    String resolve(String name, TaskGraph graph) {
+        if (name.startsWith("//")) {
+            if (graph != null) {
+                int id = graph.getId(name);
+                if (id >= 0) {
+                    return graph.getName(id);
+                }
+            }
+            return name;
+        } else if (!name.startsWith("/")) {
+            if (defaultRootPrefix == null) {
+                throw new IllegalArgumentException("Invalid name!");
+            }
+            return lookUp(graph, defaultRootPrefix, name, 0);
+        } else {
+            TrieNode node = rootTrie;
+            String prefix = null;
+            int restStart = -1;
+            for (int i = 1; i < name.length() && node != null; i++) {
+                char c = name.charAt(i);
+                if (c == '/' && node.prefix != null) {
+                    prefix = node.prefix;
+                    restStart = i + 1;
+                }
+                node = node.getChild(c);
+            }
+            if (prefix == null) {
+                throw new IllegalArgumentException("Invalid name!");
+            }
+            return lookUp(graph, prefix, name, restStart);
+        }
+    }
+
+    // A registered name is found in the graph without building the resolved string first.
+    private static String lookUp(TaskGraph graph, String prefix, String name, int start) {
+        if (graph != null) {
+            int id = graph.getId(prefix, name, start);
+            if (id >= 0) {
+                return graph.getName(id);
+            }
+        }
+        return concat(prefix, name, start);
+    }
+
+    private static String concat(String prefix, String name, int start) {
+        return new StringBuilder(prefix.length() + name.length() - start)
+                .append(prefix)
+                .append(name, start, name.length())
+                .toString();
+    }
+
+    private static class TrieNode {
+        private char[] keys = new char[0];
+        private TrieNode[] children = new TrieNode[0];
+        private String prefix;
+
+        TrieNode getChild(char c) {
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] == c) {
+                    return children[i];
+                }
+            }
+            return null;
+        }
+
+        TrieNode getOrCreateChild(char c) {
+            TrieNode child = getChild(c);
+            if (child == null) {
+                child = new TrieNode();
+                keys = Arrays.copyOf(keys, keys.length + 1);
+                children = Arrays.copyOf(children, children.length + 1);
+                keys[keys.length - 1] = c;
+                children[children.length - 1] = child;
+            }
+            return child;
+        }
+    }
+}
@@ -0,0 +1,285 @@
+package com.moekaku.tasuku.impl;
+
+import com.moekaku.tasuku.Workspace;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+class ParallelRunner {
+    static final long DEFAULT_DURATION_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    private final WorkspaceImpl workspace;
+    private final TaskGraph graph;
+    private final int threadCount;
+    private final boolean keepGoing;
+    private final Workspace.ExecutionMode executionMode;
+    private final int cpuBoundLimit;
+    private final BitSet scheduled = new BitSet();
+    private final BitSet tasksWithStaleDependencies = new BitSet();
+    private final List<Throwable> failures = new ArrayList<>();
+    private int[] tasksToRun;
+    private int[] pendingDependencyCount;
+    private int[] dependentStart;
+    private int[] dependents;
+    private long[] priority;
+    private PriorityQueue<Integer> readyCpuBoundTasks;
+    private BitSet finished;
+    private Throwable[] taskFailures;
+    private ExecutorService executor;
+    private long submissionCount = 0;
+    private int runningCount = 0;
+    private int runningCpuBoundCount = 0;
+    private volatile boolean stopped = false;
+
+    ParallelRunner(WorkspaceImpl workspace, int threadCount, boolean keepGoing,
+                   Workspace.ExecutionMode executionMode, int cpuBoundLimit) {
+        this.workspace = workspace;
+        this.graph = workspace.getGraph();
+        this.threadCount = threadCount;
+        this.keepGoing = keepGoing;
+        this.executionMode = executionMode;
+        this.cpuBoundLimit = cpuBoundLimit;
+    }
+
+    void run(int[] tasksToRun, BitSet finished, Throwable[] taskFailures) {
+        if (tasksToRun.length == 0) {
+            return;
+        }
+        this.tasksToRun = tasksToRun;
+        this.finished = finished;
+        this.taskFailures = taskFailures;
+        for (int id : tasksToRun) {
+            scheduled.set(id);
+        }
+        buildDependents();
+        computePriorities();
+        readyCpuBoundTasks = new PriorityQueue<>((a, b) -> priority[a] != priority[b]
+                ? Long.compare(priority[b], priority[a])
+                : Integer.compare(a, b));
+
+        executor = createExecutor();
+        try {
+            synchronized (this) {
+                List<Integer> ready = new ArrayList<>();
+                for (int id : tasksToRun) {
+                    if (pendingDependencyCount[id] == 0) {
+                        ready.add(id);
+                    }
+                }
+                ready.sort((a, b) -> Long.compare(priority[b], priority[a]));
+                ready.forEach(this::schedule);
+                while (runningCount > 0) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        stopped = true;
+                        Thread.currentThread().interrupt();
+                        throw new RuntimeException(e);
+                    }
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+        rethrowFailures();
+    }
+
+    private ExecutorService createExecutor() {
+        if (executionMode == Workspace.ExecutionMode.VIRTUAL_THREADS) {
+            return VirtualThreads.newExecutor();
+        }
+        ThreadPoolExecutor threadPool = new ThreadPoolExecutor(threadCount, threadCount, 0L, TimeUnit.MILLISECONDS,
+                new PriorityBlockingQueue<>(), new WorkerThreadFactory());
+        threadPool.prestartAllCoreThreads();
+        return threadPool;
+    }
+
+    private void buildDependents() {
+        int size = graph.size();
+        pendingDependencyCount = new int[size];
+        dependentStart = new int[size + 1];
+        BitSet seen = new BitSet();
+        for (int id : tasksToRun) {
+            seen.clear();
+            for (int j = 0; j < graph.getDependencyCount(id); j++) {
+                int dep = graph.getDependency(id, j);
+                if (scheduled.get(dep) && !seen.get(dep)) {
+                    seen.set(dep);
+                    pendingDependencyCount[id]++;
+                    dependentStart[dep + 1]++;
+                }
+            }
+            if (pendingDependencyCount[id] > 0) {
+                tasksWithStaleDependencies.set(id);
+            }
+        }
+        for (int i = 0; i < size; i++) {
+            dependentStart[i + 1] += dependentStart[i];
+        }
+        dependents = new int[dependentStart[size]];
+        int[] fill = Arrays.copyOf(dependentStart, size);
+        for (int id : tasksToRun) {
+            seen.clear();
+            for (int j = 0; j < graph.getDependencyCount(id); j++) {
+                int dep = graph.getDependency(id, j);
+                if (scheduled.get(dep) && !seen.get(dep)) {
+                    seen.set(dep);
+                    dependents[fill[dep]++] = id;
+                }
+            }
+        }
+    }
+
+    private void computePriorities() {
+        priority = new long[graph.size()];
+        BuildRecords buildRecords = workspace.getBuildRecords();
+        for (int i = tasksToRun.length - 1; i >= 0; i--) {
+            int id = tasksToRun[i];
+            long downstream = 0;
+            for (int j = dependentStart[id]; j < dependentStart[id + 1]; j++) {
+                downstream = Math.max(downstream, priority[dependents[j]]);
+            }
+            priority[id] = downstream + buildRecords.getDuration(graph.getName(id), DEFAULT_DURATION_NANOS);
+        }
+    }
+
+    private void schedule(int id) {
+        runningCount++;
+        if (graph.getTask(id).isCpuBound()) {
+            readyCpuBoundTasks.add(id);
+            submitReadyCpuBoundTasks();
+        } else {
+            submit(id);
+        }
+    }
+
+    private void submitReadyCpuBoundTasks() {
+        while (runningCpuBoundCount < cpuBoundLimit && !readyCpuBoundTasks.isEmpty()) {
+            runningCpuBoundCount++;
+            submit(readyCpuBoundTasks.poll());
+        }
+    }
+
+    private void submit(int id) {
+        boolean recheck = workspace.getUpToDateCheck() == Workspace.UpToDateCheck.DIGEST
+                && tasksWithStaleDependencies.get(id);
+        executor.execute(new PrioritizedJob(priority[id], submissionCount++, () -> {
+            if (stopped) {
+                onSkipped(id);
+                return;
+            }
+            Throwable failure = null;
+            try {
+                if (!recheck || workspace.recheckNeedsToRun(id)) {
+                    workspace.runTask(id);
+                    workspace.markDone(id);
+                }
+            } catch (Throwable e) {
+                failure = e;
+            }
+            onFinished(id, failure);
+        }));
+    }
+
+    private synchronized void onSkipped(int id) {
+        release(id);
+        notifyAll();
+    }
+
+    private void release(int id) {
+        runningCount--;
+        if (graph.getTask(id).isCpuBound()) {
+            runningCpuBoundCount--;
+        }
+    }
+
+    private synchronized void onFinished(int id, Throwable failure) {
+        release(id);
+        if (failure == null) {
+            finished.set(id);
+            if (!stopped) {
+                for (int i = dependentStart[id]; i < dependentStart[id + 1]; i++) {
+                    int dependent = dependents[i];
+                    if (--pendingDependencyCount[dependent] == 0) {
+                        schedule(dependent);
+                    }
+                }
+            }
+        } else {
+            taskFailures[id] = failure;
+            failures.add(failure);
+            if (!keepGoing) {
+                stopped = true;
+            }
+        }
+        if (stopped) {
+            runningCount -= readyCpuBoundTasks.size();
+            readyCpuBoundTasks.clear();
+        } else {
+            submitReadyCpuBoundTasks();
+        }
+        notifyAll();
+    }
+
+    private void rethrowFailures() {
+        if (failures.isEmpty()) {
+            return;
+        }
+        Throwable first = failures.get(0);
+        for (int i = 1; i < failures.size(); i++) {
+            first.addSuppressed(failures.get(i));
+        }
+        if (first instanceof RuntimeException) {
+            throw (RuntimeException) first;
+        } else if (first instanceof Error) {
+            throw (Error) first;
+        } else {
+            throw new RuntimeException(first);
+        }
+    }
+
+    private static class PrioritizedJob implements Runnable, Comparable<PrioritizedJob> {
+        private final long priority;
+        private final long sequence;
+        private final Runnable job;
+
+        PrioritizedJob(long priority, long sequence, Runnable job) {
+            this.priority = priority;
+            this.sequence = sequence;
+            this.job = job;
+        }
+
+        @Override
+        public void run() {
+            job.run();
+        }
+
+        @Override
+        public int compareTo(PrioritizedJob other) {
+            if (priority != other.priority) {
+                return Long.compare(other.priority, priority);
+            }
+            return Long.compare(sequence, other.sequence);
+        }
+    }
+
+    private static class WorkerThreadFactory implements ThreadFactory {
+        private final AtomicInteger threadNumber = new AtomicInteger(0);
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "tasuku-worker-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
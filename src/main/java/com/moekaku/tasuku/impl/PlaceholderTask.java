@@ -1,17 +1,15 @@
 package com.moekaku.tasuku.impl;
 
-import com.moekaku.tasuku.Workspace;
-
-import java.util.Collections;
+import com.moekaku.tasuku.StaleReason;
 
 public class PlaceholderTask extends AbstractTask {
-    PlaceholderTask(WorkspaceImpl workspace, String name) {
-        super(workspace, name, Collections.emptyList());
+    PlaceholderTask(WorkspaceImpl workspace, int id) {
+        super(workspace, id);
     }
 
     @Override
     public long getTimestamp() {
-        return getFileLastModified(getName());
+        return getFileLastModified();
     }
 
     @Override
@@ -28,7 +26,18 @@ public class PlaceholderTask extends AbstractTask {
     }
 
     @Override
-    public boolean needsToBeRun() {
-        return !fileExists(getName());
+    long getTimestamp(StalenessCheck check) {
+        return check.getFileStat(id).getLastModified();
+    }
+
+    @Override
+    boolean needsToBeRun(StalenessCheck check) {
+        if (check.getFileStat(id).exists()) {
+            check.clearReason(id);
+            return false;
+        } else {
+            check.setReason(id, StaleReason.Kind.PLACEHOLDER_FILE_MISSING, -1);
+            return true;
+        }
     }
 }
@@ -0,0 +1,172 @@
+package com.moekaku.tasuku.impl;
+
+import com.google.common.hash.HashCode;
+import com.moekaku.tasuku.BuildTracer;
+import com.moekaku.tasuku.StaleReason;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+class StalenessCheck {
+    private static final StaleReason.Kind[] STALE_REASON_KINDS = StaleReason.Kind.values();
+    private static final long NO_STALE_REASON = -1;
+    private static final int PARALLEL_PREFETCH_THRESHOLD = 256;
+
+    private final WorkspaceImpl workspace;
+    private final TaskGraph graph;
+    private final BuildTracer tracer;
+    private final boolean dryRun;
+    private final int capacity;
+    private final AtomicIntegerArray evaluatedGenerations;
+    private final AtomicBitSet stale;
+    private final AtomicLongArray reasons;
+    private final StatCache statCache;
+    private int generation = 1;
+
+    StalenessCheck(WorkspaceImpl workspace, StatCache statCache, BuildTracer tracer, boolean dryRun) {
+        this.workspace = workspace;
+        this.graph = workspace.getGraph();
+        this.tracer = tracer;
+        this.dryRun = dryRun;
+        this.capacity = graph.size();
+        this.evaluatedGenerations = new AtomicIntegerArray(capacity);
+        this.stale = new AtomicBitSet(capacity);
+        this.reasons = newReasons(capacity);
+        this.statCache = statCache;
+    }
+
+    private StalenessCheck(StalenessCheck other, int size) {
+        this.workspace = other.workspace;
+        this.graph = other.graph;
+        this.tracer = other.tracer;
+        this.dryRun = other.dryRun;
+        this.capacity = size;
+        this.evaluatedGenerations = new AtomicIntegerArray(size);
+        for (int i = 0; i < other.capacity; i++) {
+            this.evaluatedGenerations.set(i, other.evaluatedGenerations.get(i));
+        }
+        this.stale = other.stale.grow(size);
+        this.reasons = newReasons(size);
+        for (int i = 0; i < other.reasons.length(); i++) {
+            this.reasons.set(i, other.reasons.get(i));
+        }
+        this.statCache = other.statCache.grow(size);
+        this.generation = other.generation;
+    }
+
+    private static AtomicLongArray newReasons(int size) {
+        AtomicLongArray reasons = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            reasons.set(i, NO_STALE_REASON);
+        }
+        return reasons;
+    }
+
+    StalenessCheck grow(int size) {
+        if (size <= capacity) {
+            return this;
+        }
+        return new StalenessCheck(this, Math.max(size, 2 * capacity));
+    }
+
+    // Starts a new session on the same state. Results from earlier sessions are ignored from now on, so
+    // nothing proportional to the graph size is cleared or allocated.
+    void reset() {
+        if (generation == Integer.MAX_VALUE) {
+            for (int i = 0; i < capacity; i++) {
+                evaluatedGenerations.set(i, 0);
+            }
+            generation = 0;
+        }
+        generation++;
+        statCache.reset();
+    }
+
+    boolean isDryRun() {
+        return dryRun;
+    }
+
+    StatCache getStatCache() {
+        return statCache;
+    }
+
+    boolean isEvaluated(int id) {
+        return evaluatedGenerations.get(id) == generation;
+    }
+
+    boolean needsToRun(int id) {
+        if (isEvaluated(id)) {
+            return stale.get(id);
+        }
+        AbstractTask task = graph.getTask(id);
+        if (tracer != null) {
+            tracer.staleCheckStarted(task);
+        }
+        boolean needToRunValue = task.needsToBeRun(this);
+        if (tracer != null) {
+            tracer.staleCheckFinished(task, needToRunValue, needToRunValue ? getReason(id) : null);
+        }
+        if (needToRunValue) {
+            stale.set(id);
+        } else {
+            stale.clear(id);
+        }
+        evaluatedGenerations.set(id, generation);
+        return needToRunValue;
+    }
+
+    boolean recheckNeedsToRun(int id) {
+        evaluatedGenerations.set(id, 0);
+        return needsToRun(id);
+    }
+
+    void markDone(int id) {
+        stale.clear(id);
+        evaluatedGenerations.set(id, generation);
+    }
+
+    void invalidate(int id) {
+        evaluatedGenerations.set(id, 0);
+        stale.clear(id);
+        statCache.invalidate(id);
+    }
+
+    void prefetch(int[] ids) {
+        if (ids.length < PARALLEL_PREFETCH_THRESHOLD) {
+            for (int id : ids) {
+                statCache.get(id);
+            }
+        } else {
+            Arrays.stream(ids).parallel().forEach(statCache::get);
+        }
+    }
+
+    FileStat getFileStat(int id) {
+        return statCache.get(id);
+    }
+
+    HashCode getFileDigest(int id) {
+        String resolvedTaskName = graph.getName(id);
+        return workspace.getBuildRecords().getDigest(resolvedTaskName, workspace.getFilePath(resolvedTaskName),
+                getFileStat(id));
+    }
+
+    StaleReason getReason(int id) {
+        long packed = reasons.get(id);
+        if (packed == NO_STALE_REASON) {
+            return null;
+        }
+        int relatedId = (int) packed;
+        return new StaleReason(STALE_REASON_KINDS[(int) (packed >>> 32)], graph.getName(id),
+                relatedId < 0 ? null : graph.getName(relatedId));
+    }
+
+    void setReason(int id, StaleReason.Kind kind, int relatedId) {
+        reasons.set(id, ((long) kind.ordinal() << 32) | (relatedId & 0xffffffffL));
+    }
+
+    void clearReason(int id) {
+        reasons.set(id, NO_STALE_REASON);
+    }
+}
@@ -0,0 +1,58 @@
+package com.moekaku.tasuku.impl;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+class StatCache {
+    private final WorkspaceImpl workspace;
+    private final AtomicReferenceArray<FileStat> stats;
+    private final AtomicIntegerArray generations;
+    private int generation = 1;
+
+    StatCache(WorkspaceImpl workspace, int size) {
+        this.workspace = workspace;
+        this.stats = new AtomicReferenceArray<>(size);
+        this.generations = new AtomicIntegerArray(size);
+    }
+
+    StatCache grow(int size) {
+        if (size <= stats.length()) {
+            return this;
+        }
+        StatCache result = new StatCache(workspace, Math.max(size, 2 * stats.length()));
+        for (int i = 0; i < stats.length(); i++) {
+            result.stats.set(i, stats.get(i));
+            result.generations.set(i, generations.get(i));
+        }
+        result.generation = generation;
+        return result;
+    }
+
+    // Forgets every cached stat in O(1) by moving to a new generation.
+    void reset() {
+        if (generation == Integer.MAX_VALUE) {
+            for (int i = 0; i < generations.length(); i++) {
+                generations.set(i, 0);
+            }
+            generation = 0;
+        }
+        generation++;
+    }
+
+    FileStat get(int id) {
+        if (generations.get(id) == generation) {
+            FileStat stat = stats.get(id);
+            if (stat != null) {
+                return stat;
+            }
+        }
+        FileStat stat = FileStat.read(workspace.getFilePath(workspace.getGraph().getName(id)));
+        stats.set(id, stat);
+        generations.set(id, generation);
+        return stat;
+    }
+
+    void invalidate(int id) {
+        generations.set(id, 0);
+    }
+}
@@ -0,0 +1,342 @@
+package com.moekaku.tasuku.impl;
+
+import com.google.common.base.Preconditions;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+class TaskGraph {
+    private final WorkspaceImpl workspace;
+    private int[] nameSlots = new int[32];
+    // Names are kept whole instead of sharing path prefixes. They are read on hot paths such as record
+    // lookups, file paths and logging, and rebuilding them from segments would allocate on every read. The
+    // name strings are the largest cost left per node, next to the task object and the dependent lists.
+    private String[] names = new String[16];
+    private AbstractTask[] tasks = new AbstractTask[16];
+    private int[] dependencyStart = new int[16];
+    private int[] dependencyCount = new int[16];
+    private int[] dependencyIds = new int[64];
+    private int[][] dependentIds = new int[16][];
+    private int[] dependentCount = new int[16];
+    private int edgeCount = 0;
+    private int size = 0;
+    private int[] modifiedIds = new int[16];
+    private int modifiedCount = 0;
+
+    TaskGraph(WorkspaceImpl workspace) {
+        this.workspace = workspace;
+    }
+
+    int getId(String resolvedName) {
+        int mask = nameSlots.length - 1;
+        for (int slot = mix(resolvedName.hashCode()) & mask; ; slot = (slot + 1) & mask) {
+            int id = nameSlots[slot] - 1;
+            if (id < 0 || names[id].equals(resolvedName)) {
+                return id;
+            }
+        }
+    }
+
+    int getId(String prefix, String name, int start) {
+        int hash = prefix.hashCode();
+        for (int i = start; i < name.length(); i++) {
+            hash = 31 * hash + name.charAt(i);
+        }
+        int length = prefix.length() + name.length() - start;
+        int mask = nameSlots.length - 1;
+        for (int slot = mix(hash) & mask; ; slot = (slot + 1) & mask) {
+            int id = nameSlots[slot] - 1;
+            if (id < 0) {
+                return id;
+            }
+            String candidate = names[id];
+            if (candidate.length() == length && candidate.startsWith(prefix)
+                    && candidate.regionMatches(prefix.length(), name, start, length - prefix.length())) {
+                return id;
+            }
+        }
+    }
+
+    // String hashes of sequential names such as f1.txt, f2.txt differ only in their low bits, so they fill
+    // runs of neighbouring slots under linear probing. The murmur3 finalizer spreads them over the table.
+    private static int mix(int hash) {
+        int h = hash ^ (hash >>> 16);
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+        h *= 0xC2B2AE35;
+        return h ^ (h >>> 16);
+    }
+
+    private void insertName(int id) {
+        int mask = nameSlots.length - 1;
+        int slot = mix(names[id].hashCode()) & mask;
+        while (nameSlots[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        nameSlots[slot] = id + 1;
+    }
+
+    int putPlaceholder(String resolvedName) {
+        int existing = getId(resolvedName);
+        if (existing >= 0) {
+            return existing;
+        }
+        int id = addNode(resolvedName);
+        dependencyStart[id] = edgeCount;
+        dependencyCount[id] = 0;
+        markModified(id);
+        return id;
+    }
+
+    int put(AbstractTask task) {
+        return put(task, task.getName(), task.getDependencies());
+    }
+
+    int put(AbstractTask task, String name, List<String> dependencies) {
+        int[] dependencyIds = new int[dependencies.size()];
+        for (int i = 0; i < dependencyIds.length; i++) {
+            String dep = dependencies.get(i);
+            dependencyIds[i] = getId(dep);
+            Preconditions.checkState(dependencyIds[i] >= 0, "Dependency " + dep + " is not registered!");
+        }
+        int existing = getId(name);
+        int id = existing < 0 ? addNode(name) : existing;
+        put(task, id, dependencyIds, 0, dependencyIds.length);
+        return id;
+    }
+
+    void put(AbstractTask task, int id, int[] dependencies, int from, int count) {
+        tasks[id] = task;
+        task.registered(id);
+
+        ensureEdgeCapacity(edgeCount + count);
+        dependencyStart[id] = edgeCount;
+        dependencyCount[id] = count;
+        for (int i = from; i < from + count; i++) {
+            int depId = dependencies[i];
+            dependencyIds[edgeCount++] = depId;
+            addDependent(depId, id);
+        }
+        markModified(id);
+    }
+
+    int getModifiedCount() {
+        return modifiedCount;
+    }
+
+    void rollBack(int size, int modifiedCount) {
+        Arrays.fill(names, size, this.size, null);
+        Arrays.fill(tasks, size, this.size, null);
+        this.size = size;
+        this.modifiedCount = modifiedCount;
+        Arrays.fill(nameSlots, 0);
+        for (int i = 0; i < size; i++) {
+            insertName(i);
+        }
+    }
+
+    private int addNode(String name) {
+        int id = size++;
+        ensureNodeCapacity(size);
+        names[id] = name;
+        if (2 * size > nameSlots.length) {
+            nameSlots = new int[nameSlots.length * 2];
+            for (int i = 0; i < size; i++) {
+                insertName(i);
+            }
+        } else {
+            insertName(id);
+        }
+        return id;
+    }
+
+    private void markModified(int id) {
+        if (modifiedCount == modifiedIds.length) {
+            modifiedIds = Arrays.copyOf(modifiedIds, modifiedIds.length * 2);
+        }
+        modifiedIds[modifiedCount++] = id;
+    }
+
+    private void addDependent(int id, int dependent) {
+        int[] dependents = dependentIds[id];
+        if (dependents == null) {
+            dependents = new int[2];
+        } else if (dependentCount[id] == dependents.length) {
+            dependents = Arrays.copyOf(dependents, dependents.length * 2);
+        }
+        dependents[dependentCount[id]++] = dependent;
+        dependentIds[id] = dependents;
+    }
+
+    int[] getModifiedIds() {
+        return Arrays.copyOf(modifiedIds, modifiedCount);
+    }
+
+    void clearModifiedIds() {
+        modifiedCount = 0;
+    }
+
+    int size() {
+        return size;
+    }
+
+    AbstractTask getTask(int id) {
+        AbstractTask task = tasks[id];
+        return task == null ? new PlaceholderTask(workspace, id) : task;
+    }
+
+    boolean isPlaceholder(int id) {
+        return tasks[id] == null;
+    }
+
+    String getName(int id) {
+        return names[id];
+    }
+
+    int getDependencyCount(int id) {
+        return dependencyCount[id];
+    }
+
+    int getDependency(int id, int index) {
+        return dependencyIds[dependencyStart[id] + index];
+    }
+
+    int getDependentCount(int id) {
+        return dependentCount[id];
+    }
+
+    int getDependent(int id, int index) {
+        return dependentIds[id][index];
+    }
+
+    Set<String> getNames() {
+        return new AbstractSet<String>() {
+            @Override
+            public boolean contains(Object o) {
+                return o instanceof String && getId((String) o) >= 0;
+            }
+
+            @Override
+            public Iterator<String> iterator() {
+                return Arrays.asList(names).subList(0, size).iterator();
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    int[] dependentClosure(int[] roots) {
+        return dependentClosure(roots, Integer.MAX_VALUE);
+    }
+
+    int[] dependentClosure(int[] roots, int maxDepth) {
+        BitSet visited = new BitSet(size);
+        int[] queue = new int[size];
+        int tail = 0;
+        for (int root : roots) {
+            if (!visited.get(root)) {
+                visited.set(root);
+                queue[tail++] = root;
+            }
+        }
+        int head = 0;
+        for (int depth = 0; depth < maxDepth && head < tail; depth++) {
+            int levelEnd = tail;
+            for (; head < levelEnd; head++) {
+                int id = queue[head];
+                for (int i = 0; i < dependentCount[id]; i++) {
+                    int dependent = dependentIds[id][i];
+                    if (!visited.get(dependent)) {
+                        visited.set(dependent);
+                        queue[tail++] = dependent;
+                    }
+                }
+            }
+        }
+        return Arrays.copyOf(queue, tail);
+    }
+
+    int[] postOrder(int root) {
+        return postOrder(new int[]{root});
+    }
+
+    int[] postOrder(int[] roots) {
+        BitSet visited = new BitSet(size);
+        int[] stack = new int[16];
+        int[] nextEdge = new int[16];
+        int[] result = new int[16];
+        int resultSize = 0;
+        for (int root : roots) {
+            if (visited.get(root)) {
+                continue;
+            }
+            int top = 0;
+            stack[0] = root;
+            nextEdge[0] = 0;
+            visited.set(root);
+            while (top >= 0) {
+                int node = stack[top];
+                if (nextEdge[top] < dependencyCount[node]) {
+                    int dep = getDependency(node, nextEdge[top]++);
+                    if (!visited.get(dep)) {
+                        visited.set(dep);
+                        top++;
+                        if (top == stack.length) {
+                            stack = Arrays.copyOf(stack, stack.length * 2);
+                            nextEdge = Arrays.copyOf(nextEdge, nextEdge.length * 2);
+                        }
+                        stack[top] = dep;
+                        nextEdge[top] = 0;
+                    }
+                } else {
+                    if (resultSize == result.length) {
+                        result = Arrays.copyOf(result, result.length * 2);
+                    }
+                    result[resultSize++] = node;
+                    top--;
+                }
+            }
+        }
+        return Arrays.copyOf(result, resultSize);
+    }
+
+    void reserve(int additionalNodes, int additionalEdges) {
+        ensureNodeCapacity(size + additionalNodes);
+        ensureEdgeCapacity(edgeCount + additionalEdges);
+        int slotCount = nameSlots.length;
+        while (2 * (size + additionalNodes) > slotCount) {
+            slotCount *= 2;
+        }
+        if (slotCount > nameSlots.length) {
+            nameSlots = new int[slotCount];
+            for (int i = 0; i < size; i++) {
+                insertName(i);
+            }
+        }
+    }
+
+    private void ensureNodeCapacity(int capacity) {
+        if (capacity > tasks.length) {
+            int newLength = Math.max(capacity, tasks.length * 2);
+            names = Arrays.copyOf(names, newLength);
+            tasks = Arrays.copyOf(tasks, newLength);
+            dependencyStart = Arrays.copyOf(dependencyStart, newLength);
+            dependencyCount = Arrays.copyOf(dependencyCount, newLength);
+            dependentIds = Arrays.copyOf(dependentIds, newLength);
+            dependentCount = Arrays.copyOf(dependentCount, newLength);
+        }
+    }
+
+    private void ensureEdgeCapacity(int capacity) {
+        if (capacity > dependencyIds.length) {
+            dependencyIds = Arrays.copyOf(dependencyIds, Math.max(capacity, dependencyIds.length * 2));
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package com.moekaku.tasuku.impl;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+class TopologicalOrder {
+    private final TaskGraph graph;
+    private final BitSet visited = new BitSet();
+    private final BitSet pending = new BitSet();
+    private int[] order = new int[16];
+    private int size = 0;
+    private int nextOrder = 0;
+    private int[] forward = new int[16];
+    private int forwardCount;
+    private int[] backward = new int[16];
+    private int backwardCount;
+    private int[] stack = new int[16];
+    private int[] nextEdge = new int[16];
+
+    TopologicalOrder(TaskGraph graph) {
+        this.graph = graph;
+    }
+
+    void update() {
+        if (graph.size() > order.length) {
+            order = Arrays.copyOf(order, Math.max(graph.size(), order.length * 2));
+        }
+        while (size < graph.size()) {
+            order[size++] = nextOrder++;
+        }
+        int[] modifiedIds = graph.getModifiedIds();
+        try {
+            for (int id : modifiedIds) {
+                pending.set(id);
+            }
+            for (int id : modifiedIds) {
+                for (int i = 0; i < graph.getDependencyCount(id); i++) {
+                    addEdge(id, graph.getDependency(id, i));
+                }
+                pending.clear(id);
+            }
+        } finally {
+            pending.clear();
+        }
+        graph.clearModifiedIds();
+    }
+
+    int getOrder(int id) {
+        return order[id];
+    }
+
+    private void addEdge(int dependent, int dependency) {
+        if (dependent == dependency) {
+            throw cycleException(new int[] { dependent, dependent });
+        }
+        int lowerBound = order[dependent];
+        int upperBound = order[dependency];
+        if (upperBound < lowerBound) {
+            return;
+        }
+        try {
+            searchForward(dependent, dependency, upperBound);
+            searchBackward(dependency, lowerBound);
+            reorder();
+        } finally {
+            for (int i = 0; i < forwardCount; i++) {
+                visited.clear(forward[i]);
+            }
+            for (int i = 0; i < backwardCount; i++) {
+                visited.clear(backward[i]);
+            }
+            forwardCount = 0;
+            backwardCount = 0;
+        }
+    }
+
+    private void searchForward(int start, int target, int upperBound) {
+        int top = 0;
+        stack[0] = start;
+        nextEdge[0] = 0;
+        visited.set(start);
+        forward = push(forward, forwardCount++, start);
+        while (top >= 0) {
+            int node = stack[top];
+            if (nextEdge[top] < graph.getDependentCount(node)) {
+                int next = graph.getDependent(node, nextEdge[top]++);
+                if (next == target) {
+                    int[] cycle = new int[top + 3];
+                    cycle[0] = target;
+                    for (int i = 0; i <= top; i++) {
+                        cycle[i + 1] = stack[top - i];
+                    }
+                    cycle[top + 2] = target;
+                    throw cycleException(cycle);
+                }
+                if (!visited.get(next) && !pending.get(next) && order[next] < upperBound) {
+                    visited.set(next);
+                    forward = push(forward, forwardCount++, next);
+                    top++;
+                    stack = push(stack, top, next);
+                    nextEdge = push(nextEdge, top, 0);
+                }
+            } else {
+                top--;
+            }
+        }
+    }
+
+    private void searchBackward(int start, int lowerBound) {
+        int top = 0;
+        stack[0] = start;
+        nextEdge[0] = 0;
+        visited.set(start);
+        backward = push(backward, backwardCount++, start);
+        while (top >= 0) {
+            int node = stack[top];
+            if (!pending.get(node) && nextEdge[top] < graph.getDependencyCount(node)) {
+                int next = graph.getDependency(node, nextEdge[top]++);
+                if (!visited.get(next) && order[next] > lowerBound) {
+                    visited.set(next);
+                    backward = push(backward, backwardCount++, next);
+                    top++;
+                    stack = push(stack, top, next);
+                    nextEdge = push(nextEdge, top, 0);
+                }
+            } else {
+                top--;
+            }
+        }
+    }
+
+    private void reorder() {
+        long[] backwardByOrder = sortByOrder(backward, backwardCount);
+        long[] forwardByOrder = sortByOrder(forward, forwardCount);
+        int[] slots = new int[backwardCount + forwardCount];
+        int slotCount = 0;
+        for (long entry : backwardByOrder) {
+            slots[slotCount++] = (int) (entry >>> 32);
+        }
+        for (long entry : forwardByOrder) {
+            slots[slotCount++] = (int) (entry >>> 32);
+        }
+        Arrays.sort(slots);
+        int slot = 0;
+        for (long entry : backwardByOrder) {
+            order[(int) entry] = slots[slot++];
+        }
+        for (long entry : forwardByOrder) {
+            order[(int) entry] = slots[slot++];
+        }
+    }
+
+    private long[] sortByOrder(int[] ids, int count) {
+        long[] entries = new long[count];
+        for (int i = 0; i < count; i++) {
+            entries[i] = ((long) order[ids[i]] << 32) | ids[i];
+        }
+        Arrays.sort(entries);
+        return entries;
+    }
+
+    private IllegalStateException cycleException(int[] cycle) {
+        StringBuilder path = new StringBuilder();
+        for (int i = 0; i < cycle.length; i++) {
+            if (i > 0) {
+                path.append(" -> ");
+            }
+            path.append(graph.getName(cycle[i]));
+        }
+        return new IllegalStateException("WorkspaceImpl.checkCycle(): Discovered cyclic dependency: " + path);
+    }
+
+    private static int[] push(int[] array, int index, int value) {
+        if (index == array.length) {
+            array = Arrays.copyOf(array, array.length * 2);
+        }
+        array[index] = value;
+        return array;
+    }
+}
@@ -1,175 +1,330 @@
 package com.moekaku.tasuku.impl;
 
 import com.google.common.base.Preconditions;
+import com.moekaku.tasuku.ArtifactStore;
+import com.moekaku.tasuku.BuildPlan;
+import com.moekaku.tasuku.BuildResult;
+import com.moekaku.tasuku.BuildTracer;
+import com.moekaku.tasuku.GraphBuilder;
+import com.moekaku.tasuku.StaleReason;
 import com.moekaku.tasuku.Task;
+import com.moekaku.tasuku.TaskProvider;
+import com.moekaku.tasuku.Watcher;
 import com.moekaku.tasuku.Workspace;
 import org.slf4j.ILoggerFactory;
+import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.nio.file.FileSystem;
 import java.nio.file.FileSystems;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
 
 public class WorkspaceImpl implements Workspace {
   private final HashMap<String, String> rootPaths = new HashMap<>();
-  private final HashMap<String, Task> tasks = new HashMap<>();
+  private final TaskGraph graph = new TaskGraph(this);
+  private final TopologicalOrder topologicalOrder = new TopologicalOrder(graph);
+  private final NameResolver nameResolver;
   private final ILoggerFactory loggerFactory;
+  private final Logger fileTaskLogger;
   private final FileSystem fileSystem;
-  private HashMap<String, Boolean> resolvedNameToConsideredDone;
+  private final int threadCount;
+  private final ExecutionMode executionMode;
+  private final int cpuBoundLimit;
+  private final boolean keepGoing;
+  private final UpToDateCheck upToDateCheck;
+  private final BuildDatabase buildDatabase;
+  private final BuildRecords buildRecords;
+  private final BuildTracer tracer;
+  private final ArtifactStore artifactStore;
+  private final List<TaskProvider> taskProviders = new ArrayList<>();
+  private final BitSet probedPlaceholders = new BitSet();
+  private final BitSet materializedClosures = new BitSet();
+  private StalenessCheck sessionCheck;
+  private StalenessCheck retainedSessionCheck;
   private State state = State.OUT_OF_SESSION;
   private boolean modified;
+  private boolean materializing = false;
 
   private enum State {
     OUT_OF_SESSION,
     IN_SESSION
   }
 
-  WorkspaceImpl(FileSystem fileSystem, ILoggerFactory loggerFactory) {
+  WorkspaceImpl(Map<String, String> rootPaths, FileSystem fileSystem, ILoggerFactory loggerFactory,
+                int threadCount, ExecutionMode executionMode, int cpuBoundLimit, boolean keepGoing,
+                UpToDateCheck upToDateCheck, BuildDatabase buildDatabase, BuildTracer tracer,
+                ArtifactStore artifactStore) {
+    this.rootPaths.putAll(rootPaths);
+    this.nameResolver = new NameResolver(rootPaths);
     this.loggerFactory = loggerFactory;
+    this.fileTaskLogger = loggerFactory.getLogger(FileTask.class.getName());
     this.fileSystem = fileSystem;
+    this.threadCount = threadCount;
+    this.executionMode = executionMode;
+    this.cpuBoundLimit = cpuBoundLimit;
+    this.keepGoing = keepGoing;
+    this.upToDateCheck = upToDateCheck;
+    this.buildDatabase = buildDatabase;
+    this.buildRecords = new BuildRecords(buildDatabase);
+    this.tracer = tracer;
+    this.artifactStore = artifactStore;
+    if (buildDatabase != null) {
+      buildDatabase.load(buildRecords);
+    }
     this.modified = false;
   }
 
   @Override
   public String resolveName(String name) {
-    if (isNameResolved(name)) {
-      return name;
-    } else if (!isNameQuantified(name)) {
-      return substituteRoot("/" + DEFAULT_ROOT + "/" + name, DEFAULT_ROOT);
-    } else {
-      for (String rootName : rootPaths.keySet()) {
-        if (name.startsWith("/" + rootName + "/")) {
-          return substituteRoot(name, rootName);
-        }
-      }
-      throw new IllegalArgumentException("Invalid name!");
-    }
-  }
-
-  private boolean isNameResolved(String name) {
-    return name.startsWith("//");
-  }
-
-  private boolean isNameQuantified(String name) {
-    return name.startsWith("/");
-  }
-
-  private String substituteRoot(String name, String rootName) {
-    String laterPart = name.substring(2 + rootName.length());
-    return "//" + rootPaths.get(rootName) + laterPart;
-  }
-
-  private boolean isNameRooted(String name) {
-    boolean found = false;
-    for (String rootName : rootPaths.keySet()) {
-      if (name.startsWith("/" + rootName + "/")) {
-        found = true;
-        break;
-      }
-    }
-    return found;
+    return nameResolver.resolve(name, graph);
   }
 
   @Override
   public boolean taskExists(String taskName) {
     String resolvedTaskName = resolveName(taskName);
-    return tasks.containsKey(resolvedTaskName);
+    return graph.getId(resolvedTaskName) >= 0;
   }
 
   private boolean existsAndNotPlaceholder(String taskName) {
-    return taskExists(taskName) && !(getTask(taskName) instanceof PlaceholderTask);
+    int id = graph.getId(resolveName(taskName));
+    return id >= 0 && !graph.isPlaceholder(id);
   }
 
   @Override
   public Task newCommandTask(String taskName, List<String> dependencies, Runnable action) {
-    Preconditions.checkState(!isInSession(),
+    Preconditions.checkState(!isInSession() || materializing,
       "New tasks must only be create when the workspace is out of session.");
     Preconditions.checkArgument(!existsAndNotPlaceholder(taskName),
       "Task " + resolveName(taskName) + " already exists!");
     dependencies.forEach(this::newPlaceholderTask);
-    Task task = new CommandTask(this, taskName, dependencies, action);
-    tasks.put(resolveName(taskName), task);
-    modified = true;
+    CommandTask task = new CommandTask(this, taskName, dependencies, action);
+    graph.put(task);
+    markModified();
     return task;
   }
 
   @Override
   public FileTask newFileTask(String taskName, List<String> dependencies, Runnable action) {
-    Preconditions.checkState(!isInSession(),
+    Preconditions.checkState(!isInSession() || materializing,
       "New tasks must only be create when the workspace is out of session.");
     Preconditions.checkArgument(!existsAndNotPlaceholder(taskName),
       "Task " + resolveName(taskName) + " already exists!");
     dependencies.forEach(this::newPlaceholderTask);
-    FileTask task = new FileTask(this, taskName, dependencies, action, loggerFactory);
-    tasks.put(resolveName(taskName), task);
-    modified = true;
+    FileTask task = new FileTask(this, taskName, dependencies, action);
+    graph.put(task);
+    markModified();
     return task;
   }
 
+  @Override
+  public GraphBuilder newGraphBuilder() {
+    return new GraphBuilderImpl(this);
+  }
+
+  void publish(List<AbstractTask> tasks, List<String> taskNames, List<List<String>> taskDependencies,
+               List<String> placeholderNames, int edgeCount) {
+    Preconditions.checkState(!isInSession() || materializing,
+      "New tasks must only be create when the workspace is out of session.");
+    int oldSize = graph.size();
+    int oldModifiedCount = graph.getModifiedCount();
+    graph.reserve(tasks.size() + placeholderNames.size(), edgeCount);
+    for (String placeholderName : placeholderNames) {
+      graph.putPlaceholder(placeholderName);
+    }
+    BitSet published = new BitSet(graph.size() + tasks.size());
+    int[] ids = new int[tasks.size()];
+    int[] dependencyIds = new int[edgeCount];
+    int edge = 0;
+    for (int i = 0; i < ids.length; i++) {
+      String taskName = taskNames.get(i);
+      int id = graph.putPlaceholder(taskName);
+      if (!graph.isPlaceholder(id) || published.get(id)) {
+        graph.rollBack(oldSize, oldModifiedCount);
+        throw new IllegalArgumentException("Task " + taskName + " already exists!");
+      }
+      published.set(id);
+      ids[i] = id;
+      for (String dependency : taskDependencies.get(i)) {
+        dependencyIds[edge++] = graph.putPlaceholder(dependency);
+      }
+    }
+    edge = 0;
+    for (int i = 0; i < ids.length; i++) {
+      int count = taskDependencies.get(i).size();
+      graph.put(tasks.get(i), ids[i], dependencyIds, edge, count);
+      edge += count;
+    }
+    markModified();
+  }
+
   @Override
   public void newPlaceholderTask(String taskName) {
-    Preconditions.checkState(!isInSession(),
+    Preconditions.checkState(!isInSession() || materializing,
       "New tasks must only be create when the workspace is out of session.");
-    if (!taskExists(taskName)) {
-      PlaceholderTask task = new PlaceholderTask(this, taskName);
-      tasks.put(resolveName(taskName), task);
-      modified = true;
+    String resolvedTaskName = resolveName(taskName);
+    if (graph.getId(resolvedTaskName) < 0) {
+      graph.putPlaceholder(resolvedTaskName);
+      markModified();
     }
   }
 
   @Override
-  public void startSession() {
+  public void addTaskProvider(TaskProvider taskProvider) {
     Preconditions.checkState(!isInSession(),
-      "A session can only be started when the workspace is out of session.");
+      "Task providers must only be added when the workspace is out of session.");
+    taskProviders.add(Preconditions.checkNotNull(taskProvider));
+  }
+
+  private void markModified() {
+    modified = true;
+    if (!materializing) {
+      materializedClosures.clear();
+    }
+  }
+
+  private int materialize(String resolvedTaskName) {
+    if (taskProviders.isEmpty()) {
+      return graph.getId(resolvedTaskName);
+    }
+    int root = graph.getId(resolvedTaskName);
+    if (root >= 0 && !modified && materializedClosures.get(root)) {
+      return root;
+    }
+    int oldSize = graph.size();
+    boolean completed = false;
+    materializing = true;
+    try {
+      int firstModified = graph.getModifiedCount();
+      if (root < 0) {
+        if (!provideTask(resolvedTaskName)) {
+          completed = true;
+          return -1;
+        }
+        root = graph.getId(resolvedTaskName);
+      }
+      if (!materializedClosures.get(root)) {
+        BitSet probed = probeClosure(root);
+        forgetReplacedClosures(firstModified, probed);
+      }
+      completed = true;
+    } finally {
+      materializing = false;
+      if (!completed) {
+        materializedClosures.clear();
+      }
+    }
     if (modified) {
-      checkCycle();
+      int[] modifiedIds = graph.getModifiedIds();
+      topologicalOrder.update();
+      modified = false;
+      if (isInSession()) {
+        growSessionState(oldSize, modifiedIds);
+      }
     }
-    state = State.IN_SESSION;
-    resolvedNameToConsideredDone = new HashMap<>();
-    modified = false;
+    return root;
   }
 
-  private void checkCycle() {
-    HashMap<String, NodeState> nodeState = new HashMap<>();
-    for (Map.Entry<String, Task> entry : tasks.entrySet()) {
-      String node = entry.getKey();
-      if (!nodeState.containsKey(node)) {
-        dfs(node, nodeState);
+  private BitSet probeClosure(int root) {
+    BitSet probed = new BitSet();
+    int[] stack = new int[16];
+    int top = 0;
+    stack[top++] = root;
+    materializedClosures.set(root);
+    while (top > 0) {
+      int id = stack[--top];
+      if (graph.isPlaceholder(id) && !probedPlaceholders.get(id)) {
+        probedPlaceholders.set(id);
+        probed.set(id);
+        provideTask(graph.getName(id));
+      }
+      for (int i = 0; i < graph.getDependencyCount(id); i++) {
+        int dep = graph.getDependency(id, i);
+        if (!materializedClosures.get(dep)) {
+          materializedClosures.set(dep);
+          if (top == stack.length) {
+            stack = Arrays.copyOf(stack, stack.length * 2);
+          }
+          stack[top++] = dep;
+        }
       }
     }
+    return probed;
   }
 
-  private enum NodeState {
-    IN_STACK,
-    VISITED
+  private void forgetReplacedClosures(int firstModified, BitSet probed) {
+    int[] modifiedIds = graph.getModifiedIds();
+    for (int i = firstModified; i < modifiedIds.length; i++) {
+      int id = modifiedIds[i];
+      if (materializedClosures.get(id) && !graph.isPlaceholder(id) && !probed.get(id)) {
+        materializedClosures.clear();
+        return;
+      }
+    }
   }
 
-  private void dfs(String node, HashMap<String, NodeState> nodeState) {
-    nodeState.put(node, NodeState.IN_STACK);
-    Task task = tasks.get(node);
-    for (String dep : task.getDependencies()) {
-      if (!nodeState.containsKey(dep)) {
-        dfs(dep, nodeState);
-      } else {
-        NodeState state = nodeState.get(dep);
-        if (state == NodeState.IN_STACK) {
-          throw new IllegalStateException("WorkspaceImpl.checkCycle(): Discovered cyclic dependency!");
-        }
+  private boolean provideTask(String resolvedTaskName) {
+    for (TaskProvider taskProvider : taskProviders) {
+      if (taskProvider.provideTask(resolvedTaskName)) {
+        return true;
       }
     }
-    nodeState.put(node, NodeState.VISITED);
+    return false;
+  }
+
+  private void growSessionState(int oldSize, int[] modifiedIds) {
+    if (graph.size() > oldSize) {
+      sessionCheck = sessionCheck.grow(graph.size());
+      retainedSessionCheck = sessionCheck;
+    }
+    for (int id : modifiedIds) {
+      sessionCheck.invalidate(id);
+    }
+  }
+
+  @Override
+  public void startSession() {
+    Preconditions.checkState(!isInSession(),
+      "A session can only be started when the workspace is out of session.");
+    if (modified) {
+      topologicalOrder.update();
+    }
+    state = State.IN_SESSION;
+    if (retainedSessionCheck == null) {
+      retainedSessionCheck = new StalenessCheck(this, new StatCache(this, graph.size()), tracer, false);
+    } else {
+      retainedSessionCheck = retainedSessionCheck.grow(graph.size());
+      retainedSessionCheck.reset();
+    }
+    sessionCheck = retainedSessionCheck;
+    modified = false;
+    if (tracer != null) {
+      tracer.sessionStarted();
+    }
   }
 
   @Override
   public void endSession() {
     Preconditions.checkState(isInSession(),
       "A session can only be ended when the workspace is in session.");
+    if (tracer != null) {
+      tracer.sessionEnded();
+    }
     state = State.OUT_OF_SESSION;
-    resolvedNameToConsideredDone = null;
+    sessionCheck = null;
+    if (buildDatabase != null) {
+      buildDatabase.close();
+    }
   }
 
   @Override
@@ -199,29 +354,333 @@ public class WorkspaceImpl implements Workspace {
 
   @Override
   public Set<String> getTaskNames() {
-    return tasks.keySet();
+    return graph.getNames();
+  }
+
+  @Override
+  public Set<String> getDependents(String taskName) {
+    int id = getId(taskName);
+    LinkedHashSet<String> result = new LinkedHashSet<>();
+    for (int i = 0; i < graph.getDependentCount(id); i++) {
+      result.add(graph.getName(graph.getDependent(id, i)));
+    }
+    return result;
+  }
+
+  @Override
+  public Set<String> getAffectedTasks(Collection<String> taskNames) {
+    return getAffectedTasks(taskNames, Integer.MAX_VALUE);
+  }
+
+  @Override
+  public Set<String> getAffectedTasks(Collection<String> taskNames, int maxDepth) {
+    Preconditions.checkArgument(maxDepth >= 0, "Maximum depth must not be negative.");
+    int[] roots = taskNames.stream().mapToInt(this::getId).toArray();
+    LinkedHashSet<String> result = new LinkedHashSet<>();
+    for (int id : graph.dependentClosure(roots, maxDepth)) {
+      result.add(graph.getName(id));
+    }
+    return result;
   }
 
   @Override
   public void run(String taskName) {
     Preconditions.checkState(isInSession(),
       "A task can only be run when the workspace is in session.");
-    String resolvedTaskName = resolveName(taskName);
-    if (!taskExists(resolvedTaskName)) {
+    int id = materialize(resolveName(taskName));
+    if (id < 0) {
       throw new IllegalArgumentException("Task " + taskName + " does not exists");
     }
-    runHelper(resolvedTaskName);
+    int[] tasksToRun = collectTasksToRun(graph.postOrder(id));
+    execute(tasksToRun, new BitSet(graph.size()), new Throwable[graph.size()]);
   }
 
-  private void runHelper(String resolvedTaskName) {
-    Task task = getTask(resolvedTaskName);
-    for (String depName : task.getDependencies()) {
-      if (needsToRun(depName))
-        runHelper(depName);
+  private void execute(int[] tasksToRun, BitSet finished, Throwable[] taskFailures) {
+    if (threadCount > 1 || executionMode == ExecutionMode.VIRTUAL_THREADS) {
+      new ParallelRunner(this, threadCount, keepGoing, executionMode, cpuBoundLimit)
+        .run(tasksToRun, finished, taskFailures);
+    } else {
+      runSequentially(tasksToRun, finished, taskFailures);
+    }
+  }
+
+  @Override
+  public BuildResult run(Collection<String> taskNames) {
+    Preconditions.checkState(isInSession(),
+      "A task can only be run when the workspace is in session.");
+    LinkedHashMap<String, Integer> targets = new LinkedHashMap<>();
+    for (String taskName : taskNames) {
+      int id = materialize(resolveName(taskName));
+      if (id < 0) {
+        throw new IllegalArgumentException("Task " + taskName + " does not exists");
+      }
+      targets.put(taskName, id);
+    }
+    int[] closure = graph.postOrder(targets.values().stream().mapToInt(Integer::intValue).toArray());
+    sessionCheck.prefetch(closure);
+    int[] tasksToRun = collectTasksToRun(closure.clone());
+    BitSet finished = new BitSet(graph.size());
+    Throwable[] taskFailures = new Throwable[graph.size()];
+    try {
+      execute(tasksToRun, finished, taskFailures);
+    } catch (RuntimeException | Error e) {
+      if (!isTaskFailure(e, taskFailures)) {
+        throw e;
+      }
+    }
+    return createBuildResult(targets, closure, tasksToRun, finished, taskFailures);
+  }
+
+  // The runners rethrow a recorded task failure, wrapped if it is checked. Anything else is not reported
+  // through the build result and must propagate.
+  private static boolean isTaskFailure(Throwable thrown, Throwable[] taskFailures) {
+    for (Throwable failure : taskFailures) {
+      if (failure != null && (failure == thrown || failure == thrown.getCause())) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private BuildResult createBuildResult(Map<String, Integer> targets, int[] closure, int[] tasksToRun,
+                                        BitSet finished, Throwable[] taskFailures) {
+    BitSet scheduled = new BitSet(graph.size());
+    for (int id : tasksToRun) {
+      scheduled.set(id);
+    }
+    Throwable[] blockingFailures = new Throwable[graph.size()];
+    BitSet done = new BitSet(graph.size());
+    for (int id : closure) {
+      Throwable blockingFailure = taskFailures[id];
+      boolean dependenciesDone = true;
+      for (int i = 0; i < graph.getDependencyCount(id); i++) {
+        int dep = graph.getDependency(id, i);
+        if (blockingFailure == null) {
+          blockingFailure = blockingFailures[dep];
+        }
+        dependenciesDone &= done.get(dep);
+      }
+      blockingFailures[id] = blockingFailure;
+      if (dependenciesDone && (!scheduled.get(id) || finished.get(id))) {
+        done.set(id);
+      }
+    }
+    LinkedHashMap<String, BuildResult.Status> statuses = new LinkedHashMap<>();
+    LinkedHashMap<String, Throwable> failures = new LinkedHashMap<>();
+    targets.forEach((taskName, id) -> {
+      if (blockingFailures[id] != null) {
+        statuses.put(taskName, BuildResult.Status.FAILED);
+        failures.put(taskName, blockingFailures[id]);
+      } else if (done.get(id)) {
+        statuses.put(taskName, BuildResult.Status.SUCCEEDED);
+      } else {
+        statuses.put(taskName, BuildResult.Status.NOT_RUN);
+      }
+    });
+    return new BuildResult(statuses, failures);
+  }
+
+  @Override
+  public BuildPlan plan(Collection<String> taskNames) {
+    int[] roots = new int[taskNames.size()];
+    int count = 0;
+    for (String taskName : taskNames) {
+      int id = materialize(resolveName(taskName));
+      if (id < 0) {
+        throw new IllegalArgumentException("Task " + taskName + " does not exists");
+      }
+      roots[count++] = id;
     }
-    if (needsToRun(resolvedTaskName)) {
+    if (modified) {
+      topologicalOrder.update();
+      modified = false;
+    }
+    int[] closure = graph.postOrder(roots);
+    StalenessCheck check = sessionCheck == null
+      ? new StalenessCheck(this, new StatCache(this, graph.size()), null, true)
+      : new StalenessCheck(this, sessionCheck.getStatCache(), null, true);
+    check.prefetch(closure);
+    int[] levels = new int[graph.size()];
+    List<BuildPlan.Step> steps = new ArrayList<>();
+    for (int id : closure) {
+      if (!check.needsToRun(id)) {
+        continue;
+      }
+      int level = 0;
+      for (int i = 0; i < graph.getDependencyCount(id); i++) {
+        int dep = graph.getDependency(id, i);
+        if (check.needsToRun(dep)) {
+          level = Math.max(level, levels[dep] + 1);
+        }
+      }
+      levels[id] = level;
+      steps.add(new BuildPlan.Step(graph.getName(id), check.getReason(id), level));
+    }
+    return new BuildPlan(steps);
+  }
+
+  @Override
+  public Watcher watch(String taskName) {
+    Preconditions.checkState(!isInSession(),
+      "A watcher can only be started when the workspace is out of session.");
+    return new FileWatcher(this, getId(taskName));
+  }
+
+  private int[] collectTasksToRun(int[] closure) {
+    int count = 0;
+    for (int id : closure) {
+      if (needsToRun(id)) {
+        closure[count++] = id;
+      }
+    }
+    return Arrays.copyOf(closure, count);
+  }
+
+  private void runSequentially(int[] tasksToRun, BitSet finished, Throwable[] taskFailures) {
+    BitSet scheduled = new BitSet(graph.size());
+    BitSet failed = new BitSet(graph.size());
+    List<RuntimeException> failures = new ArrayList<>();
+    for (int id : tasksToRun) {
+      scheduled.set(id);
+    }
+    for (int id : tasksToRun) {
+      boolean dependenciesFailed = false;
+      boolean dependenciesRun = false;
+      for (int i = 0; i < graph.getDependencyCount(id); i++) {
+        int dep = graph.getDependency(id, i);
+        dependenciesFailed |= failed.get(dep);
+        dependenciesRun |= scheduled.get(dep);
+      }
+      if (dependenciesFailed) {
+        failed.set(id);
+        continue;
+      }
+      if (dependenciesRun && upToDateCheck == UpToDateCheck.DIGEST && !recheckNeedsToRun(id)) {
+        finished.set(id);
+        continue;
+      }
+      try {
+        runTask(id);
+      } catch (RuntimeException e) {
+        taskFailures[id] = e;
+        if (!keepGoing) {
+          throw e;
+        }
+        failures.add(e);
+        failed.set(id);
+        continue;
+      }
+      markDone(id);
+      finished.set(id);
+    }
+    if (!failures.isEmpty()) {
+      RuntimeException first = failures.get(0);
+      failures.stream().skip(1).forEach(first::addSuppressed);
+      throw first;
+    }
+  }
+
+  void runTask(int id) {
+    Task task = graph.getTask(id);
+    if (tracer != null) {
+      tracer.executionStarted(task);
+    }
+    Throwable failure = null;
+    try {
+      long start = System.nanoTime();
       task.run();
-      resolvedNameToConsideredDone.put(resolvedTaskName, true);
+      buildRecords.setDuration(task.getName(), System.nanoTime() - start);
+    } catch (RuntimeException | Error e) {
+      failure = e;
+      throw e;
+    } finally {
+      invalidateFileStat(id);
+      if (tracer != null) {
+        tracer.executionFinished(task, failure);
+      }
+    }
+  }
+
+  void markDone(int id) {
+    Task task = graph.getTask(id);
+    if (task instanceof FileTask && keepsTaskRecords()) {
+      ((FileTask) task).recordRun(System.currentTimeMillis());
+    }
+    sessionCheck.markDone(id);
+    if (buildDatabase != null) {
+      buildDatabase.flush();
+    }
+  }
+
+  private boolean keepsTaskRecords() {
+    return buildDatabase != null || upToDateCheck == UpToDateCheck.DIGEST;
+  }
+
+  boolean recheckNeedsToRun(int id) {
+    return sessionCheck.recheckNeedsToRun(id);
+  }
+
+  Logger getFileTaskLogger() {
+    return fileTaskLogger;
+  }
+
+  TaskGraph getGraph() {
+    return graph;
+  }
+
+  UpToDateCheck getUpToDateCheck() {
+    return upToDateCheck;
+  }
+
+  String getPortableName(String resolvedName) {
+    String bestRoot = null;
+    String bestPath = "";
+    for (Map.Entry<String, String> entry : rootPaths.entrySet()) {
+      String path = entry.getValue();
+      if (path.length() > bestPath.length() && resolvedName.startsWith(path, 2)) {
+        bestRoot = entry.getKey();
+        bestPath = path;
+      }
+    }
+    if (bestRoot == null) {
+      return resolvedName;
+    }
+    return "/" + bestRoot + "/" + resolvedName.substring(2 + bestPath.length());
+  }
+
+  ArtifactStore getArtifactStore() {
+    return artifactStore;
+  }
+
+  BuildRecords getBuildRecords() {
+    return buildRecords;
+  }
+
+  StalenessCheck getStalenessCheck() {
+    StalenessCheck check = sessionCheck;
+    if (check == null) {
+      return new StalenessCheck(this, new StatCache(this, graph.size()), tracer, true);
+    }
+    return check;
+  }
+
+  FileStat getFileStat(int id) {
+    StalenessCheck check = sessionCheck;
+    if (check == null) {
+      return FileStat.read(getFilePath(graph.getName(id)));
+    } else {
+      return check.getFileStat(id);
+    }
+  }
+
+  void invalidate(int id) {
+    sessionCheck.invalidate(id);
+  }
+
+  void invalidateFileStat(int id) {
+    StalenessCheck check = sessionCheck;
+    if (check != null) {
+      check.getStatCache().invalidate(id);
     }
   }
 
@@ -230,21 +689,50 @@ public class WorkspaceImpl implements Workspace {
     Preconditions.checkState(isInSession(),
       "You can only check whether a task needs to run when the workspace is in session.");
     String resolvedTaskName = resolveName(taskName);
-    if (resolvedNameToConsideredDone.containsKey(resolvedTaskName)) {
-      return !resolvedNameToConsideredDone.get(resolvedTaskName);
-    } else {
-      Task task = getTask(resolvedTaskName);
-      boolean needToRunValue = task.needsToBeRun();
-      resolvedNameToConsideredDone.put(resolvedTaskName, !needToRunValue);
-      return needToRunValue;
+    int id = materialize(resolvedTaskName);
+    Preconditions.checkArgument(id >= 0,
+      "Task " + resolvedTaskName + " does not exists!");
+    return needsToRunAfterDependencies(id);
+  }
+
+  boolean needsToRun(int id) {
+    return sessionCheck.needsToRun(id);
+  }
+
+  // Checks the dependencies bottom-up first so that a long chain is never evaluated recursively.
+  private boolean needsToRunAfterDependencies(int id) {
+    if (!sessionCheck.isEvaluated(id)) {
+      for (int dep : graph.postOrder(id)) {
+        sessionCheck.needsToRun(dep);
+      }
     }
+    return sessionCheck.needsToRun(id);
   }
 
   Task getTask(String taskName) {
+    return graph.getTask(getId(taskName));
+  }
+
+  private int getId(String taskName) {
     String resolvedTaskName = resolveName(taskName);
-    Preconditions.checkArgument(taskExists(resolvedTaskName),
+    int id = graph.getId(resolvedTaskName);
+    Preconditions.checkArgument(id >= 0,
       "Task " + resolvedTaskName + " does not exists!");
-    return tasks.get(resolvedTaskName);
+    return id;
+  }
+
+  @Override
+  public Optional<StaleReason> explain(String taskName) {
+    Preconditions.checkState(isInSession(),
+      "You can only explain whether a task needs to run when the workspace is in session.");
+    String resolvedTaskName = resolveName(taskName);
+    int id = materialize(resolvedTaskName);
+    Preconditions.checkArgument(id >= 0,
+      "Task " + resolvedTaskName + " does not exists!");
+    if (!needsToRunAfterDependencies(id)) {
+      return Optional.empty();
+    }
+    return Optional.ofNullable(sessionCheck.getReason(id));
   }
 
   @Override
@@ -256,6 +744,14 @@ public class WorkspaceImpl implements Workspace {
     private final HashMap<String, String> rootPaths = new HashMap<>();
     private ILoggerFactory loggerFactory;
     private FileSystem fileSystem;
+    private int threadCount = 1;
+    private ExecutionMode executionMode = ExecutionMode.PLATFORM_THREADS;
+    private int cpuBoundLimit = Runtime.getRuntime().availableProcessors();
+    private boolean keepGoing = false;
+    private UpToDateCheck upToDateCheck = UpToDateCheck.TIMESTAMP;
+    private String buildDatabaseFileName;
+    private BuildTracer tracer;
+    private ArtifactStore artifactStore;
 
     public Builder() {
       rootPaths.put(DEFAULT_ROOT, "./");
@@ -284,13 +780,74 @@ public class WorkspaceImpl implements Workspace {
       return this;
     }
 
+    @Override
+    public Builder threadCount(int threadCount) {
+      Preconditions.checkArgument(threadCount >= 1, "Thread count must be at least 1.");
+      this.threadCount = threadCount;
+      return this;
+    }
+
+    @Override
+    public Builder executionMode(ExecutionMode executionMode) {
+      this.executionMode = Preconditions.checkNotNull(executionMode);
+      return this;
+    }
+
+    @Override
+    public Builder cpuBoundLimit(int cpuBoundLimit) {
+      Preconditions.checkArgument(cpuBoundLimit >= 1, "CPU-bound limit must be at least 1.");
+      this.cpuBoundLimit = cpuBoundLimit;
+      return this;
+    }
+
+    @Override
+    public Builder keepGoing(boolean keepGoing) {
+      this.keepGoing = keepGoing;
+      return this;
+    }
+
+    @Override
+    public Builder upToDateCheck(UpToDateCheck upToDateCheck) {
+      this.upToDateCheck = Preconditions.checkNotNull(upToDateCheck);
+      return this;
+    }
+
+    @Override
+    public Builder buildDatabase(String fileName) {
+      this.buildDatabaseFileName = fileName;
+      return this;
+    }
+
+    @Override
+    public Builder tracer(BuildTracer tracer) {
+      this.tracer = Preconditions.checkNotNull(tracer);
+      return this;
+    }
+
+    @Override
+    public Builder artifactStore(ArtifactStore artifactStore) {
+      this.artifactStore = artifactStore;
+      return this;
+    }
+
+    private Path getBuildDatabasePath() {
+      Path path = fileSystem.getPath(buildDatabaseFileName);
+      if (!path.isAbsolute()) {
+        path = fileSystem.getPath(rootPaths.get(DEFAULT_ROOT)).resolve(path);
+      }
+      return path.toAbsolutePath().normalize();
+    }
+
     @Override
     public WorkspaceImpl build() {
-      WorkspaceImpl result = new WorkspaceImpl(fileSystem, loggerFactory);
-      for (Map.Entry<String, String> entry : rootPaths.entrySet()) {
-        result.rootPaths.put(entry.getKey(), entry.getValue());
+      if (executionMode == ExecutionMode.VIRTUAL_THREADS) {
+        VirtualThreads.checkSupported();
       }
-      return result;
+      BuildDatabase buildDatabase = buildDatabaseFileName == null
+        ? null
+        : new BuildDatabase(getBuildDatabasePath());
+      return new WorkspaceImpl(rootPaths, fileSystem, loggerFactory, threadCount, executionMode, cpuBoundLimit,
+        keepGoing, upToDateCheck, buildDatabase, tracer, artifactStore);
     }
   }
 }
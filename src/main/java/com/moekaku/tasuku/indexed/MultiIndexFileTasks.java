@@ -0,0 +1,155 @@
+package com.moekaku.tasuku.indexed;
+
+import com.google.common.base.Preconditions;
+import com.moekaku.tasuku.TaskProvider;
+import com.moekaku.tasuku.TaskUtil;
+import com.moekaku.tasuku.Workspace;
+
+import java.util.AbstractList;
+import java.util.List;
+
+public abstract class MultiIndexFileTasks implements IndexedFileTasks, TaskProvider {
+    private final Workspace ws;
+    private final String resolvedPrefix;
+    private final String commandName;
+    private final int[] shape;
+    private final int fileTaskCount;
+
+    public MultiIndexFileTasks(Workspace ws, String prefix, String commandName, int[] shape,
+                               boolean createTasksImmediately) {
+        this.ws = ws;
+        this.resolvedPrefix = ws.resolveName(prefix);
+        this.commandName = commandName;
+        this.shape = shape.clone();
+        int count = 1;
+        for (int size : shape) {
+            Preconditions.checkArgument(size >= 0, "Shape must not contain negative sizes.");
+            try {
+                count = Math.multiplyExact(count, size);
+            } catch (ArithmeticException e) {
+                throw new IllegalArgumentException("The file task group has too many elements.", e);
+            }
+        }
+        this.fileTaskCount = count;
+        if (createTasksImmediately) {
+            createTasks();
+        } else {
+            ws.addTaskProvider(this);
+        }
+    }
+
+    @Override
+    public abstract String getFileTaskName(int... index);
+    public abstract int[] getIndex(String resolvedFileTaskName);
+    public abstract void createFileTask(int... index);
+
+    @Override
+    public String getCreationCommandName() {
+        return resolvedPrefix + "/" + commandName;
+    }
+
+    @Override
+    public String getCleaningCommandName() {
+        return resolvedPrefix + "/" + commandName + "_clean";
+    }
+
+    public List<String> getFileTaskNames() {
+        return new AbstractList<String>() {
+            @Override
+            public String get(int i) {
+                return getFileTaskName(toIndex(i));
+            }
+
+            @Override
+            public int size() {
+                return fileTaskCount;
+            }
+        };
+    }
+
+    private List<String> getFileNames() {
+        List<String> fileTaskNames = getFileTaskNames();
+        return new AbstractList<String>() {
+            @Override
+            public String get(int i) {
+                return Workspace.getFileName(ws.resolveName(fileTaskNames.get(i)));
+            }
+
+            @Override
+            public int size() {
+                return fileTaskCount;
+            }
+        };
+    }
+
+    private int[] toIndex(int flatIndex) {
+        Preconditions.checkElementIndex(flatIndex, fileTaskCount);
+        int[] index = new int[shape.length];
+        for (int i = shape.length - 1; i >= 0; i--) {
+            index[i] = flatIndex % shape[i];
+            flatIndex /= shape[i];
+        }
+        return index;
+    }
+
+    private boolean isInBounds(int[] index) {
+        if (index.length != shape.length) {
+            return false;
+        }
+        for (int i = 0; i < shape.length; i++) {
+            if (index[i] < 0 || index[i] >= shape[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void createTasks() {
+        if (fileTaskCount == 0) return;
+        List<String> fileTaskNames = getFileTaskNames();
+        if (ws.taskExists(fileTaskNames.get(0))) return;
+        for (int i = 0; i < fileTaskCount; i++) {
+            createFileTask(toIndex(i));
+        }
+        ws.newCommandTask(getCreationCommandName(), fileTaskNames, null);
+        TaskUtil.createDeleteAllTask(ws, getCleaningCommandName(), getFileNames());
+    }
+
+    @Override
+    public boolean provideTask(String resolvedTaskName) {
+        if (resolvedTaskName.equals(getCreationCommandName())) {
+            ws.newCommandTask(getCreationCommandName(), getFileTaskNames(), null);
+            return true;
+        } else if (resolvedTaskName.equals(getCleaningCommandName())) {
+            TaskUtil.createDeleteAllTask(ws, getCleaningCommandName(), getFileNames());
+            return true;
+        }
+        int[] index = getIndex(resolvedTaskName);
+        if (index == null || !isInBounds(index)
+                || !ws.resolveName(getFileTaskName(index)).equals(resolvedTaskName)) {
+            return false;
+        }
+        createFileTask(index);
+        return true;
+    }
+
+    @Override
+    public String getPrefix() {
+        return resolvedPrefix;
+    }
+
+    @Override
+    public int[] getShape() {
+        return shape.clone();
+    }
+
+    @Override
+    public Workspace getWorkspace() {
+        return ws;
+    }
+
+    @Override
+    public int getArity() {
+        return shape.length;
+    }
+}
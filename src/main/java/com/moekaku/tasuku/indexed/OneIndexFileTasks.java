@@ -4,8 +4,8 @@ import com.google.common.base.Preconditions;
 import com.moekaku.tasuku.TaskUtil;
 import com.moekaku.tasuku.Workspace;
 
+import java.util.AbstractList;
 import java.util.List;
-import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
 public abstract class OneIndexFileTasks implements IndexedFileTasks {
@@ -21,7 +21,18 @@ public abstract class OneIndexFileTasks implements IndexedFileTasks {
         this.resolvedPrefix = ws.resolveName(prefix);
         this.commandName = commandName;
         this.fileTaskCount = count;
-        fileTaskNames = IntStream.range(0, count).mapToObj(this::getFileTaskName).collect(Collectors.toList());
+        fileTaskNames = new AbstractList<String>() {
+            @Override
+            public String get(int index) {
+                Preconditions.checkElementIndex(index, fileTaskCount);
+                return getFileTaskName(index);
+            }
+
+            @Override
+            public int size() {
+                return fileTaskCount;
+            }
+        };
         if (createTasksImmediately) {
             createTasks();
         }
@@ -45,7 +56,17 @@ public abstract class OneIndexFileTasks implements IndexedFileTasks {
         if (ws.taskExists(fileTaskNames.get(0))) return;
         IntStream.range(0, fileTaskCount).forEach(this::createFileTask);
         ws.newCommandTask(getCreationCommandName(), fileTaskNames, null);
-        TaskUtil.createDeleteAllTask(ws, getCleaningCommandName(), fileTaskNames);
+        TaskUtil.createDeleteAllTask(ws, getCleaningCommandName(), new AbstractList<String>() {
+            @Override
+            public String get(int index) {
+                return Workspace.getFileName(ws.resolveName(fileTaskNames.get(index)));
+            }
+
+            @Override
+            public int size() {
+                return fileTaskCount;
+            }
+        });
     }
 
     @Override
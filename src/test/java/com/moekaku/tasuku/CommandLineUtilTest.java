@@ -0,0 +1,142 @@
+package com.moekaku.tasuku;
+
+import com.google.common.base.Strings;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+public class CommandLineUtilTest {
+    private static void assumeLinux() {
+        assumeTrue(System.getProperty("os.name").toLowerCase().startsWith("linux"));
+    }
+
+    @Test
+    public void testRunAndGetOutput() {
+        assumeLinux();
+
+        assertThat(CommandLineUtil.runAndGetOutput("echo hello && echo world")).isEqualTo("hello\nworld\n");
+    }
+
+    @Test
+    public void testRunAndGetOutput_longCommand() {
+        assumeLinux();
+
+        String command = "X=" + Strings.repeat("a", 64 * 1024) + "\necho ${#X}";
+
+        assertThat(CommandLineUtil.runAndGetOutput(command)).isEqualTo("65536\n");
+    }
+
+    @Test
+    public void testRun_nonZeroExitCode() {
+        assumeLinux();
+
+        assertThrows(RuntimeException.class, () -> CommandLineUtil.run("exit 3"));
+    }
+
+    @Test
+    public void testStart_separateStreams() {
+        assumeLinux();
+        List<String> stdout = new ArrayList<>();
+        List<String> stderr = new ArrayList<>();
+
+        CommandHandle handle = CommandLineUtil.start("echo out; echo err 1>&2; exit 2",
+                OutputSink.lines(stdout::add), OutputSink.lines(stderr::add));
+
+        assertThat(handle.waitFor()).isEqualTo(2);
+        assertThat(handle.isAlive()).isFalse();
+        assertThat(stdout).containsExactly("out");
+        assertThat(stderr).containsExactly("err");
+    }
+
+    @Test
+    public void testStart_concurrentCommands() {
+        assumeLinux();
+        List<CommandHandle> handles = new ArrayList<>();
+        List<List<String>> outputs = new ArrayList<>();
+
+        for (int i = 0; i < 16; i++) {
+            List<String> output = new ArrayList<>();
+            outputs.add(output);
+            handles.add(CommandLineUtil.start("echo " + i, OutputSink.lines(output::add)));
+        }
+
+        for (int i = 0; i < 16; i++) {
+            assertThat(handles.get(i).waitFor()).isEqualTo(0);
+            assertThat(outputs.get(i)).containsExactly(Integer.toString(i));
+        }
+    }
+
+    @Test
+    public void testStart_stdinIsEmpty() {
+        assumeLinux();
+        List<String> output = new ArrayList<>();
+
+        CommandHandle handle = CommandLineUtil.start("cat; read x || echo eof", OutputSink.lines(output::add));
+
+        assertThat(handle.waitFor(10, TimeUnit.SECONDS)).isTrue();
+        assertThat(handle.getExitCode()).isEqualTo(0);
+        assertThat(output).containsExactly("eof");
+    }
+
+    @Test
+    public void testStart_waitForTimesOut() {
+        assumeLinux();
+
+        CommandHandle handle = CommandLineUtil.start("sleep 10", OutputSink.discard());
+        try {
+            assertThat(handle.waitFor(50, TimeUnit.MILLISECONDS)).isFalse();
+            assertThat(handle.isAlive()).isTrue();
+            assertThrows(IllegalStateException.class, handle::getExitCode);
+        } finally {
+            handle.destroy();
+        }
+        assertThat(handle.waitFor()).isNotEqualTo(0);
+    }
+
+    @Test
+    public void testStart_largeOutputIsStreamed() {
+        assumeLinux();
+        long[] byteCount = {0};
+
+        CommandHandle handle = CommandLineUtil.start("head -c 4194304 /dev/zero",
+                (buffer, offset, length) -> byteCount[0] += length);
+
+        assertThat(handle.waitFor()).isEqualTo(0);
+        assertThat(byteCount[0]).isEqualTo(4L * 1024 * 1024);
+    }
+
+    @Test
+    public void testSetMaxConcurrentProcesses_invalidLimit() {
+        assertThrows(IllegalArgumentException.class, () -> CommandLineUtil.setMaxConcurrentProcesses(0));
+    }
+
+    @Test
+    public void testSetMaxConcurrentProcesses_blocksExtraProcesses() throws Exception {
+        assumeLinux();
+        CommandLineUtil.setMaxConcurrentProcesses(1);
+        try {
+            CommandHandle first = CommandLineUtil.start("sleep 0.5", OutputSink.discard());
+            CountDownLatch secondStarted = new CountDownLatch(1);
+            Thread thread = new Thread(() -> {
+                CommandLineUtil.start("true", OutputSink.discard()).waitFor();
+                secondStarted.countDown();
+            });
+            thread.start();
+
+            assertThat(secondStarted.await(200, TimeUnit.MILLISECONDS)).isFalse();
+            assertThat(first.isAlive()).isTrue();
+            assertThat(first.waitFor()).isEqualTo(0);
+            assertThat(secondStarted.await(10, TimeUnit.SECONDS)).isTrue();
+            thread.join();
+        } finally {
+            CommandLineUtil.setMaxConcurrentProcesses(Runtime.getRuntime().availableProcessors());
+        }
+    }
+}
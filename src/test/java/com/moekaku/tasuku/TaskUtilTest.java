@@ -0,0 +1,96 @@
+package com.moekaku.tasuku;
+
+import com.google.common.jimfs.Configuration;
+import com.google.common.jimfs.Jimfs;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.FileSystem;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class TaskUtilTest {
+    @Test
+    public void testDeleteAllTask_deletesFilesInManyDirectories() throws IOException {
+        FileSystem fs = Jimfs.newFileSystem(Configuration.unix());
+        Workspace workspace = Workspace.builder()
+                .fileSystem(fs)
+                .root("ROOT0", "/")
+                .build();
+        List<String> files = new ArrayList<>();
+        for (int i = 0; i < 3000; i++) {
+            Path path = fs.getPath("/out/" + (i % 7) + "/" + i + ".txt");
+            Files.createDirectories(path.getParent());
+            Files.write(path, new byte[] { 1 });
+            files.add(path.toString());
+        }
+        files.add("/out/missing.txt");
+        Files.write(fs.getPath("/keep.txt"), new byte[] { 1 });
+        TaskUtil.createDeleteAllTask(workspace, "clean", files);
+
+        workspace.startSession();
+        workspace.run("clean");
+        workspace.endSession();
+
+        for (String file : files) {
+            assertThat(Files.exists(fs.getPath(file))).isFalse();
+        }
+        assertThat(Files.exists(fs.getPath("/keep.txt"))).isTrue();
+    }
+
+    @Test
+    public void testDeleteAll_keepsDeletingAfterFailure() throws IOException {
+        FileSystem fs = Jimfs.newFileSystem(Configuration.unix());
+        Workspace workspace = Workspace.builder()
+                .fileSystem(fs)
+                .root("ROOT0", "/")
+                .build();
+        Files.createDirectories(fs.getPath("/out/full"));
+        Files.write(fs.getPath("/out/full/x.txt"), new byte[] { 1 });
+        Files.write(fs.getPath("/out/a.txt"), new byte[] { 1 });
+        Files.write(fs.getPath("/out/b.txt"), new byte[] { 1 });
+
+        RuntimeException e = assertThrows(RuntimeException.class, () -> TaskUtil.deleteAll(workspace,
+                Arrays.asList("/out/a.txt", "/out/full", "/out/b.txt"), Collections.emptyList(), 1));
+
+        assertThat(e.getSuppressed()).hasLength(1);
+        assertThat(Files.exists(fs.getPath("/out/a.txt"))).isFalse();
+        assertThat(Files.exists(fs.getPath("/out/b.txt"))).isFalse();
+        assertThat(Files.exists(fs.getPath("/out/full/x.txt"))).isTrue();
+    }
+
+    @Test
+    public void testFileTaskGroupBuilder_removesOwnedDirectories() throws IOException {
+        FileSystem fs = Jimfs.newFileSystem(Configuration.unix());
+        Workspace workspace = Workspace.builder()
+                .fileSystem(fs)
+                .root("ROOT0", "/")
+                .build();
+        Files.createDirectories(fs.getPath("/data/sub"));
+        Files.write(fs.getPath("/data/a.txt"), new byte[] { 1 });
+        Files.write(fs.getPath("/data/sub/b.txt"), new byte[] { 1 });
+        Files.write(fs.getPath("/data/stray.txt"), new byte[] { 1 });
+        Files.write(fs.getPath("/c.txt"), new byte[] { 1 });
+        FileTaskGroupBuilder.build(workspace, "/ROOT0/groups", builder -> {
+            for (String name : new String[] { "data/a.txt", "data/sub/b.txt", "c.txt" }) {
+                workspace.newFileTask(name, Collections.emptyList(), null);
+                builder.add(name, "outputs");
+            }
+            builder.ownDirectory("outputs", "data");
+        });
+
+        workspace.startSession();
+        workspace.run("/ROOT0/groups/outputs_clean");
+        workspace.endSession();
+
+        assertThat(Files.exists(fs.getPath("/data"))).isFalse();
+        assertThat(Files.exists(fs.getPath("/c.txt"))).isFalse();
+    }
+}
@@ -0,0 +1,104 @@
+package com.moekaku.tasuku;
+
+import com.google.common.jimfs.Configuration;
+import com.google.common.jimfs.Jimfs;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystem;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.google.common.truth.Truth.assertThat;
+
+public class WorkspaceDaemonTest {
+    @Test
+    public void testDaemon_keepsWorkspaceUntilDefinitionChanges() throws Exception {
+        FileSystem fs = Jimfs.newFileSystem(Configuration.unix().toBuilder()
+                .setAttributeViews("basic", "owner", "posix")
+                .build());
+        Path definitionFile = fs.getPath("/build.def");
+        Files.write(definitionFile, new byte[] { 1 });
+        AtomicInteger runCount = new AtomicInteger(0);
+        WorkspaceDefinition definition = new WorkspaceDefinition() {
+            @Override
+            public Workspace create() {
+                Workspace workspace = Workspace.builder().fileSystem(fs).root("ROOT0", "/").build();
+                workspace.newFileTask("out.txt", Collections.emptyList(), () -> {
+                    runCount.incrementAndGet();
+                    writeString(fs.getPath("/out.txt"), "out");
+                });
+                workspace.newCommandTask("fail", Collections.emptyList(), () -> {
+                    throw new IllegalStateException("fail failed");
+                });
+                return workspace;
+            }
+
+            @Override
+            public List<Path> getDefinitionFiles() {
+                return Collections.singletonList(definitionFile);
+            }
+        };
+
+        Path tokenFile = fs.getPath("/.tasuku/daemon.token");
+        try (WorkspaceDaemon daemon = new WorkspaceDaemon(definition, 0, tokenFile)) {
+            assertThat(Files.getPosixFilePermissions(tokenFile))
+                    .containsExactly(PosixFilePermission.OWNER_READ, PosixFilePermission.OWNER_WRITE);
+            Thread thread = daemon.start();
+            WorkspaceDaemonClient client = new WorkspaceDaemonClient(daemon.getPort(), tokenFile);
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            PrintStream out = new PrintStream(output, true, "UTF-8");
+
+            Path wrongTokenFile = fs.getPath("/wrong.token");
+            writeString(wrongTokenFile, "0123456789abcdef");
+            WorkspaceDaemonClient intruder = new WorkspaceDaemonClient(daemon.getPort(), wrongTokenFile);
+            assertThat(intruder.run(Collections.singletonList("out.txt"), out)).isFalse();
+            assertThat(new String(output.toByteArray(), StandardCharsets.UTF_8))
+                    .contains("ERROR Invalid workspace daemon token.");
+            assertThat(daemon.getLoadCount()).isEqualTo(0);
+
+            try (Socket idle = new Socket(InetAddress.getLoopbackAddress(), daemon.getPort())) {
+                assertThat(idle.isConnected()).isTrue();
+                assertThat(client.run(Collections.singletonList("out.txt"), out)).isTrue();
+            }
+            assertThat(client.run(Collections.singletonList("out.txt"), out)).isTrue();
+            assertThat(runCount.get()).isEqualTo(1);
+            assertThat(daemon.getLoadCount()).isEqualTo(1);
+
+            assertThat(client.run(Arrays.asList("out.txt", "fail"), out)).isFalse();
+            assertThat(new String(output.toByteArray(), StandardCharsets.UTF_8))
+                    .contains("FAILED fail fail failed");
+
+            Files.setLastModifiedTime(definitionFile, FileTime.fromMillis(System.currentTimeMillis() + 10000));
+            assertThat(client.run(Collections.singletonList("out.txt"), out)).isTrue();
+            assertThat(daemon.getLoadCount()).isEqualTo(2);
+
+            assertThat(client.run(Collections.singletonList("missing"), out)).isFalse();
+
+            client.stop();
+            thread.join(TimeUnit.SECONDS.toMillis(10));
+            assertThat(thread.isAlive()).isFalse();
+        }
+        assertThat(Files.exists(tokenFile)).isFalse();
+    }
+
+    private static void writeString(Path path, String content) {
+        try {
+            Files.write(path, content.getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -2,7 +2,19 @@ package com.moekaku.tasuku.impl;
 
 import com.google.common.jimfs.Configuration;
 import com.google.common.jimfs.Jimfs;
+import com.google.common.jimfs.WatchServiceConfiguration;
+import com.moekaku.tasuku.Action;
+import com.moekaku.tasuku.BuildPlan;
+import com.moekaku.tasuku.BuildResult;
+import com.moekaku.tasuku.BuildTracer;
+import com.moekaku.tasuku.GraphBuilder;
+import com.moekaku.tasuku.LocalArtifactStore;
+import com.moekaku.tasuku.StaleReason;
+import com.moekaku.tasuku.Task;
+import com.moekaku.tasuku.TraceRecorder;
+import com.moekaku.tasuku.Watcher;
 import com.moekaku.tasuku.Workspace;
+import com.moekaku.tasuku.indexed.MultiIndexFileTasks;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
 
@@ -10,18 +22,27 @@ import java.io.BufferedWriter;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
+import java.io.StringWriter;
 import java.nio.ByteBuffer;
 import java.nio.channels.SeekableByteChannel;
 import java.nio.file.FileSystem;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
 
 import static com.google.common.truth.Truth.assertThat;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
 
@@ -65,6 +86,31 @@ public class WorkspaceImplTest {
         assertThrows(IllegalArgumentException.class, () -> workspace.resolveName("/ROOT10/abc"));
     }
 
+    @Test
+    public void testResolveName_rootNamesSharingPrefix() {
+        Workspace workspace = Workspace.builder()
+                .root("ROOT1", "tiger/")
+                .root("ROOT10", "lion/")
+                .build();
+
+        assertThat(workspace.resolveName("/ROOT1/test.txt")).isEqualTo("//tiger/test.txt");
+        assertThat(workspace.resolveName("/ROOT10/test.txt")).isEqualTo("//lion/test.txt");
+        assertThrows(IllegalArgumentException.class, () -> workspace.resolveName("/ROOT100/abc"));
+        assertThrows(IllegalArgumentException.class, () -> workspace.resolveName("/"));
+    }
+
+    @Test
+    public void testResolveName_returnsCanonicalInstance() {
+        Workspace workspace = Workspace.builder().build();
+        Task task = workspace.newCommandTask("test.txt", Collections.emptyList(), null);
+
+        String resolved = task.getName();
+        assertThat(workspace.resolveName(new String("test.txt"))).isSameAs(resolved);
+        assertThat(workspace.resolveName(new String("//./test.txt"))).isSameAs(resolved);
+        assertThat(workspace.resolveName(new String("/ROOT0/test.txt"))).isSameAs(resolved);
+        assertThat(workspace.resolveName("other.txt")).isNotSameAs(workspace.resolveName("other.txt"));
+    }
+
     @Test
     public void testRun_singleTask() {
         Workspace workspace = Workspace.builder().build();
@@ -267,4 +313,1245 @@ public class WorkspaceImplTest {
            Workspace.builder().root("ROOT0", "abc");
         });
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testRun_parallelDependencies() {
+        Workspace workspace = Workspace.builder().threadCount(4).build();
+
+        AtomicInteger count = new AtomicInteger(0);
+        int[] times = new int[4];
+        workspace.newCommandTask("a", Collections.emptyList(), () -> times[0] = count.incrementAndGet());
+        workspace.newCommandTask("b", Collections.singletonList("a"), () -> times[1] = count.incrementAndGet());
+        workspace.newCommandTask("c", Collections.singletonList("a"), () -> times[2] = count.incrementAndGet());
+        workspace.newCommandTask("d", Arrays.asList("b", "c"), () -> times[3] = count.incrementAndGet());
+
+        workspace.startSession();
+        workspace.run("d");
+        workspace.endSession();
+
+        assertThat(count.get()).isEqualTo(4);
+        assertThat(times[0]).isLessThan(times[1]);
+        assertThat(times[0]).isLessThan(times[2]);
+        assertThat(times[1]).isLessThan(times[3]);
+        assertThat(times[2]).isLessThan(times[3]);
+    }
+
+    @Test
+    public void testRun_parallelIndependentTasksRunConcurrently() {
+        Workspace workspace = Workspace.builder().threadCount(2).build();
+
+        CountDownLatch latch = new CountDownLatch(2);
+        boolean[] metEachOther = new boolean[2];
+        for (int i = 0; i < 2; i++) {
+            int index = i;
+            workspace.newCommandTask("t" + i, Collections.emptyList(), () -> {
+                latch.countDown();
+                try {
+                    metEachOther[index] = latch.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+        }
+        workspace.newCommandTask("all", Arrays.asList("t0", "t1"), null);
+
+        workspace.startSession();
+        workspace.run("all");
+        workspace.endSession();
+
+        assertThat(metEachOther[0]).isTrue();
+        assertThat(metEachOther[1]).isTrue();
+    }
+
+    @Test
+    public void testRun_parallelStopsOnFailure() {
+        Workspace workspace = Workspace.builder().threadCount(4).build();
+
+        Runnable bCommand = Mockito.mock(Runnable.class);
+        workspace.newCommandTask("a", Collections.emptyList(), () -> {
+            throw new IllegalStateException("a failed");
+        });
+        workspace.newCommandTask("b", Collections.singletonList("a"), bCommand);
+
+        workspace.startSession();
+        IllegalStateException e = assertThrows(IllegalStateException.class, () -> workspace.run("b"));
+        workspace.endSession();
+
+        assertThat(e.getMessage()).isEqualTo("a failed");
+        verify(bCommand, never()).run();
+    }
+
+    @Test
+    public void testRunMany_sharesTraversalAndReportsPerTarget() {
+        for (int threadCount : new int[] { 1, 4 }) {
+            AtomicInteger staleChecks = new AtomicInteger(0);
+            Workspace workspace = Workspace.builder()
+                    .threadCount(threadCount)
+                    .keepGoing(true)
+                    .tracer(new BuildTracer() {
+                        @Override
+                        public void staleCheckStarted(Task task) {
+                            staleChecks.incrementAndGet();
+                        }
+                    })
+                    .build();
+
+            Runnable sharedCommand = Mockito.mock(Runnable.class);
+            Runnable bCommand = Mockito.mock(Runnable.class);
+            workspace.newCommandTask("shared", Collections.emptyList(), sharedCommand);
+            workspace.newCommandTask("a", Collections.singletonList("shared"), () -> {
+                throw new IllegalStateException("a failed");
+            });
+            workspace.newCommandTask("b", Collections.singletonList("shared"), bCommand);
+            workspace.newCommandTask("c", Arrays.asList("a", "b"), null);
+
+            workspace.startSession();
+            BuildResult result = workspace.run(Arrays.asList("a", "b", "c"));
+            workspace.endSession();
+
+            verify(sharedCommand).run();
+            verify(bCommand).run();
+            assertThat(staleChecks.get()).isEqualTo(4);
+            assertThat(result.isSuccessful()).isFalse();
+            assertThat(result.getStatus("a")).isEqualTo(BuildResult.Status.FAILED);
+            assertThat(result.getFailure("a")).hasMessageThat().isEqualTo("a failed");
+            assertThat(result.getStatus("b")).isEqualTo(BuildResult.Status.SUCCEEDED);
+            assertThat(result.getFailure("b")).isNull();
+            assertThat(result.getStatus("c")).isEqualTo(BuildResult.Status.FAILED);
+            assertThat(result.getFailedTargets()).containsExactly("a", "c").inOrder();
+        }
+    }
+
+    @Test
+    public void testRunMany_rethrowsErrorsThatAreNotTaskFailures() {
+        FileSystem fs = Jimfs.newFileSystem(Configuration.unix());
+        AtomicInteger cChecks = new AtomicInteger(0);
+        Workspace workspace = Workspace.builder()
+                .fileSystem(fs)
+                .root("ROOT0", "/")
+                .keepGoing(true)
+                .upToDateCheck(Workspace.UpToDateCheck.DIGEST)
+                .tracer(new BuildTracer() {
+                    @Override
+                    public void staleCheckStarted(Task task) {
+                        if (task.getName().equals("///c.txt") && cChecks.incrementAndGet() > 1) {
+                            throw new IllegalStateException("tracer failed");
+                        }
+                    }
+                })
+                .build();
+        workspace.newCommandTask("a", Collections.emptyList(), () -> {
+            throw new IllegalStateException("a failed");
+        });
+        workspace.newFileTask("b.txt", Collections.emptyList(), () -> writeString(fs, "/b.txt", "b"));
+        workspace.newFileTask("c.txt", Collections.singletonList("b.txt"), () -> writeString(fs, "/c.txt", "c"));
+
+        workspace.startSession();
+        IllegalStateException e = assertThrows(IllegalStateException.class,
+                () -> workspace.run(Arrays.asList("a", "c.txt")));
+        workspace.endSession();
+
+        assertThat(e).hasMessageThat().isEqualTo("tracer failed");
+    }
+
+    @Test
+    public void testRunMany_stopsOnFirstFailureWithoutKeepGoing() {
+        Workspace workspace = Workspace.builder().build();
+        Runnable cCommand = Mockito.mock(Runnable.class);
+        workspace.newCommandTask("a", Collections.emptyList(), null);
+        workspace.newCommandTask("b", Collections.emptyList(), () -> {
+            throw new IllegalStateException("b failed");
+        });
+        workspace.newCommandTask("c", Collections.emptyList(), cCommand);
+
+        workspace.startSession();
+        BuildResult result = workspace.run(Arrays.asList("a", "b", "c"));
+        workspace.endSession();
+
+        verify(cCommand, never()).run();
+        assertThat(result.getStatus("a")).isEqualTo(BuildResult.Status.SUCCEEDED);
+        assertThat(result.getStatus("b")).isEqualTo(BuildResult.Status.FAILED);
+        assertThat(result.getStatus("c")).isEqualTo(BuildResult.Status.NOT_RUN);
+    }
+
+    @Test
+    public void testRun_parallelRunStopsOnFirstFailureWithoutKeepGoing() {
+        Workspace workspace = Workspace.builder().threadCount(2).build();
+        AtomicInteger runCount = new AtomicInteger(0);
+        List<String> dependencies = new ArrayList<>();
+        workspace.newCommandTask("fail", Collections.emptyList(), () -> {
+            throw new IllegalStateException("fail failed");
+        });
+        dependencies.add("fail");
+        for (int i = 0; i < 200; i++) {
+            workspace.newCommandTask("dep" + i, Collections.emptyList(), () -> {
+                runCount.incrementAndGet();
+                try {
+                    Thread.sleep(10);
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+            dependencies.add("dep" + i);
+        }
+        workspace.newCommandTask("root", dependencies, null);
+
+        workspace.startSession();
+        assertThrows(IllegalStateException.class, () -> workspace.run("root"));
+        workspace.endSession();
+
+        assertThat(runCount.get()).isLessThan(10);
+    }
+
+    @Test
+    public void testRun_cpuBoundLimitCapsCpuBoundActions() {
+        List<Workspace.Builder> builders = new ArrayList<>();
+        builders.add(Workspace.builder().threadCount(8).cpuBoundLimit(1));
+        if (Boolean.getBoolean("tasuku.requireVirtualThreads")) {
+            assertThat(VirtualThreads.isSupported()).isTrue();
+        }
+        if (VirtualThreads.isSupported()) {
+            builders.add(Workspace.builder().executionMode(Workspace.ExecutionMode.VIRTUAL_THREADS).cpuBoundLimit(1));
+        } else {
+            assertThrows(UnsupportedOperationException.class,
+                    () -> Workspace.builder().executionMode(Workspace.ExecutionMode.VIRTUAL_THREADS).build());
+        }
+        for (Workspace.Builder builder : builders) {
+            Workspace workspace = builder.build();
+            AtomicInteger running = new AtomicInteger(0);
+            AtomicInteger maxRunning = new AtomicInteger(0);
+            CountDownLatch ioLatch = new CountDownLatch(3);
+            List<String> dependencies = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                workspace.newCommandTask("cpu" + i, Collections.emptyList(), Action.cpuBound("cpu", () -> {
+                    maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                    try {
+                        Thread.sleep(20);
+                    } catch (InterruptedException e) {
+                        throw new RuntimeException(e);
+                    }
+                    running.decrementAndGet();
+                }));
+                dependencies.add("cpu" + i);
+            }
+            for (int i = 0; i < 3; i++) {
+                workspace.newCommandTask("io" + i, Collections.emptyList(), () -> {
+                    ioLatch.countDown();
+                    try {
+                        assertThat(ioLatch.await(10, TimeUnit.SECONDS)).isTrue();
+                    } catch (InterruptedException e) {
+                        throw new RuntimeException(e);
+                    }
+                });
+                dependencies.add("io" + i);
+            }
+            workspace.newCommandTask("all", dependencies, null);
+
+            runInSession(workspace, "all");
+
+            assertThat(maxRunning.get()).isEqualTo(1);
+            assertThat(ioLatch.getCount()).isEqualTo(0);
+        }
+    }
+
+    @Test
+    public void testRun_waitingCpuBoundTasksDoNotHoldWorkers() {
+        Workspace workspace = Workspace.builder().threadCount(2).cpuBoundLimit(1).build();
+        CountDownLatch ioDone = new CountDownLatch(1);
+        List<Boolean> ioFinishedInTime = Collections.synchronizedList(new ArrayList<>());
+        for (int i = 0; i < 2; i++) {
+            workspace.newCommandTask("cpu" + i, Collections.emptyList(), Action.cpuBound("cpu", () -> {
+                try {
+                    ioFinishedInTime.add(ioDone.await(10, TimeUnit.SECONDS));
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+            }));
+        }
+        workspace.newCommandTask("io", Collections.emptyList(), ioDone::countDown);
+        workspace.newCommandTask("all", Arrays.asList("cpu0", "cpu1", "io"), null);
+
+        runInSession(workspace, "all");
+
+        assertThat(ioFinishedInTime).containsExactly(true, true);
+    }
+
+    @Test
+    public void testRun_keepGoingRunsIndependentTasks() {
+        for (int threadCount : new int[] { 1, 4 }) {
+            Workspace workspace = Workspace.builder().threadCount(threadCount).keepGoing(true).build();
+
+            Runnable bCommand = Mockito.mock(Runnable.class);
+            Runnable cCommand = Mockito.mock(Runnable.class);
+            Runnable dCommand = Mockito.mock(Runnable.class);
+            workspace.newCommandTask("a", Collections.emptyList(), () -> {
+                throw new IllegalStateException("a failed");
+            });
+            workspace.newCommandTask("b", Collections.singletonList("a"), bCommand);
+            workspace.newCommandTask("c", Collections.emptyList(), cCommand);
+            workspace.newCommandTask("d", Arrays.asList("b", "c"), dCommand);
+
+            workspace.startSession();
+            assertThrows(IllegalStateException.class, () -> workspace.run("d"));
+            workspace.endSession();
+
+            verify(bCommand, never()).run();
+            verify(cCommand).run();
+            verify(dCommand, never()).run();
+        }
+    }
+
+    @Test
+    public void testThreadCount_mustBePositive() {
+        assertThrows(IllegalArgumentException.class, () -> {
+            Workspace.builder().threadCount(0);
+        });
+    }
+
+    @Test
+    public void testFileTasks_statRefreshedAfterTaskRuns() {
+        FileSystem fs = Jimfs.newFileSystem(Configuration.unix());
+        final WorkspaceImpl workspace = (WorkspaceImpl) Workspace.builder()
+                .fileSystem(fs)
+                .root("ROOT0", "/")
+                .build();
+        workspace.newFileTask("a.txt", Collections.emptyList(), () ->
+                writeTextFile(workspace.getFileSystem(), "/a.txt", (BufferedWriter fout) -> {
+                    try {
+                        fout.write("abc");
+                    } catch (IOException e) {
+                        throw new RuntimeException(e);
+                    }
+                }));
+
+        workspace.startSession();
+        assertThat(workspace.getTask("a.txt").getTimestamp()).isEqualTo(Long.MAX_VALUE);
+        workspace.run("a.txt");
+        assertThat(workspace.getTask("a.txt").getTimestamp()).isLessThan(Long.MAX_VALUE);
+        workspace.endSession();
+    }
+
+    private static void writeString(FileSystem fs, String fileName, String content) {
+        writeTextFile(fs, fileName, (BufferedWriter fout) -> {
+            try {
+                fout.write(content);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+    }
+
+    private static void runInSession(Workspace workspace, String taskName) {
+        workspace.startSession();
+        workspace.run(taskName);
+        workspace.endSession();
+    }
+
+    @Test
+    public void testDigest_touchedInputDoesNotTriggerRun() throws IOException {
+        FileSystem fs = Jimfs.newFileSystem(Configuration.unix());
+        writeString(fs, "/in.txt", "x");
+        final Workspace workspace = Workspace.builder()
+                .fileSystem(fs)
+                .root("ROOT0", "/")
+                .upToDateCheck(Workspace.UpToDateCheck.DIGEST)
+                .build();
+        int[] count = {0};
+        workspace.newFileTask("out.txt", Collections.singletonList("in.txt"), () -> {
+            count[0]++;
+            writeString(fs, "/out.txt", readTextFile(fs, "/in.txt"));
+        });
+
+        runInSession(workspace, "out.txt");
+        assertThat(count[0]).isEqualTo(1);
+
+        Path input = fs.getPath("/in.txt");
+        FileTime later = FileTime.fromMillis(Files.getLastModifiedTime(input).toMillis() + 3600 * 1000);
+        Files.setLastModifiedTime(input, later);
+        runInSession(workspace, "out.txt");
+        assertThat(count[0]).isEqualTo(1);
+
+        writeString(fs, "/in.txt", "y");
+        Files.setLastModifiedTime(input, FileTime.fromMillis(later.toMillis() + 1000));
+        runInSession(workspace, "out.txt");
+        assertThat(count[0]).isEqualTo(2);
+        assertThat(readTextFile(fs, "/out.txt")).isEqualTo("y");
+    }
+
+    @Test
+    public void testDigest_unchangedOutputCutsOffDependents() throws IOException {
+        for (int threadCount : new int[] { 1, 4 }) {
+            FileSystem fs = Jimfs.newFileSystem(Configuration.unix());
+            writeString(fs, "/in.txt", "x");
+            final Workspace workspace = Workspace.builder()
+                    .fileSystem(fs)
+                    .root("ROOT0", "/")
+                    .threadCount(threadCount)
+                    .upToDateCheck(Workspace.UpToDateCheck.DIGEST)
+                    .build();
+            int[] midCount = {0};
+            int[] outCount = {0};
+            workspace.newFileTask("mid.txt", Collections.singletonList("in.txt"), () -> {
+                midCount[0]++;
+                writeString(fs, "/mid.txt", "constant");
+            });
+            workspace.newFileTask("out.txt", Collections.singletonList("mid.txt"), () -> {
+                outCount[0]++;
+                writeString(fs, "/out.txt", readTextFile(fs, "/mid.txt"));
+            });
+
+            runInSession(workspace, "out.txt");
+            assertThat(midCount[0]).isEqualTo(1);
+            assertThat(outCount[0]).isEqualTo(1);
+
+            Path input = fs.getPath("/in.txt");
+            FileTime inputTime = Files.getLastModifiedTime(input);
+            writeString(fs, "/in.txt", "y");
+            Files.setLastModifiedTime(input, FileTime.fromMillis(inputTime.toMillis() + 3600 * 1000));
+            runInSession(workspace, "out.txt");
+            assertThat(midCount[0]).isEqualTo(2);
+            assertThat(outCount[0]).isEqualTo(1);
+        }
+    }
+
+    private static Workspace newDatabaseWorkspace(FileSystem fs) {
+        return Workspace.builder()
+                .fileSystem(fs)
+                .root("ROOT0", "/")
+                .upToDateCheck(Workspace.UpToDateCheck.DIGEST)
+                .buildDatabase("/.tasuku/build.db")
+                .build();
+    }
+
+    private static void newCopyTask(Workspace workspace, List<String> dependencies, String identity, int[] count) {
+        FileSystem fs = workspace.getFileSystem();
+        workspace.newFileTask("out.txt", dependencies, Action.of(identity, () -> {
+            count[0]++;
+            writeString(fs, "/out.txt", readTextFile(fs, "/in.txt"));
+        }));
+    }
+
+    @Test
+    public void testBuildDatabase_recordsSurviveWorkspaceRestart() throws IOException {
+        FileSystem fs = Jimfs.newFileSystem(Configuration.unix());
+        writeString(fs, "/in.txt", "x");
+        int[] count = {0};
+
+        Workspace first = newDatabaseWorkspace(fs);
+        newCopyTask(first, Collections.singletonList("in.txt"), "copy", count);
+        runInSession(first, "out.txt");
+        assertThat(count[0]).isEqualTo(1);
+        assertThat(Files.exists(fs.getPath("/.tasuku/build.db"))).isTrue();
+
+        Path input = fs.getPath("/in.txt");
+        Files.setLastModifiedTime(input,
+                FileTime.fromMillis(Files.getLastModifiedTime(input).toMillis() + 3600 * 1000));
+
+        Workspace second = newDatabaseWorkspace(fs);
+        newCopyTask(second, Collections.singletonList("in.txt"), "copy", count);
+        runInSession(second, "out.txt");
+        assertThat(count[0]).isEqualTo(1);
+    }
+
+    @Test
+    public void testBuildDatabase_recordsCompletedTasksBeforeSessionEnds() throws IOException {
+        FileSystem fs = Jimfs.newFileSystem(Configuration.unix());
+        writeString(fs, "/in.txt", "in");
+        int[] count = {0};
+
+        Workspace first = newDatabaseWorkspace(fs);
+        newCopyTask(first, Collections.singletonList("in.txt"), "copy", count);
+        runInSession(first, "out.txt");
+        writeString(fs, "/in.txt", "changed");
+        first.startSession();
+        first.run("out.txt");
+        assertThat(count[0]).isEqualTo(2);
+
+        Workspace second = newDatabaseWorkspace(fs);
+        newCopyTask(second, Collections.singletonList("in.txt"), "copy", count);
+        runInSession(second, "out.txt");
+        assertThat(count[0]).isEqualTo(2);
+    }
+
+    @Test
+    public void testBuildDatabase_relativePathResolvesAgainstDefaultRoot() throws IOException {
+        FileSystem fs = Jimfs.newFileSystem(Configuration.unix());
+        Files.createDirectories(fs.getPath("/data"));
+        writeString(fs, "/data/in.txt", "x");
+        Workspace workspace = Workspace.builder()
+                .fileSystem(fs)
+                .root("ROOT0", "/data/")
+                .buildDatabase(".tasuku/build.db")
+                .build();
+        workspace.newFileTask("out.txt", Collections.singletonList("in.txt"),
+                () -> writeString(fs, "/data/out.txt", "o"));
+        runInSession(workspace, "out.txt");
+
+        assertThat(Files.exists(fs.getPath("/data/.tasuku/build.db"))).isTrue();
+        assertThat(Files.exists(fs.getPath("/work/.tasuku/build.db"))).isFalse();
+    }
+
+    @Test
+    public void testTaskRecords_onlyWrittenForSuccessfulRuns() {
+        FileSystem fs = Jimfs.newFileSystem(Configuration.unix());
+        writeString(fs, "/in.txt", "x");
+        writeString(fs, "/out.txt", "o");
+        WorkspaceImpl workspace = (WorkspaceImpl) newDatabaseWorkspace(fs);
+        workspace.newFileTask("out.txt", Collections.singletonList("in.txt"), null);
+
+        workspace.startSession();
+        assertThat(workspace.needsToRun("out.txt")).isFalse();
+        workspace.endSession();
+        assertThat(workspace.getBuildRecords().getTaskRecords()).isEmpty();
+
+        WorkspaceImpl timestampWorkspace = (WorkspaceImpl) Workspace.builder()
+                .fileSystem(fs)
+                .root("ROOT0", "/")
+                .build();
+        timestampWorkspace.newFileTask("mid.txt", Collections.singletonList("in.txt"),
+                () -> writeString(fs, "/mid.txt", "m"));
+        runInSession(timestampWorkspace, "mid.txt");
+        assertThat(timestampWorkspace.getBuildRecords().getTaskRecords()).isEmpty();
+    }
+
+    @Test
+    public void testBuildDatabase_changedDefinitionTriggersRun() {
+        FileSystem fs = Jimfs.newFileSystem(Configuration.unix());
+        writeString(fs, "/in.txt", "x");
+        writeString(fs, "/other.txt", "o");
+        int[] count = {0};
+
+        Workspace first = newDatabaseWorkspace(fs);
+        newCopyTask(first, Collections.singletonList("in.txt"), "copy", count);
+        runInSession(first, "out.txt");
+        assertThat(count[0]).isEqualTo(1);
+
+        Workspace second = newDatabaseWorkspace(fs);
+        newCopyTask(second, Arrays.asList("in.txt", "other.txt"), "copy", count);
+        runInSession(second, "out.txt");
+        assertThat(count[0]).isEqualTo(2);
+
+        Workspace third = newDatabaseWorkspace(fs);
+        newCopyTask(third, Arrays.asList("in.txt", "other.txt"), "copy-v2", count);
+        runInSession(third, "out.txt");
+        assertThat(count[0]).isEqualTo(3);
+
+        Workspace fourth = newDatabaseWorkspace(fs);
+        newCopyTask(fourth, Arrays.asList("in.txt", "other.txt"), "copy-v2", count);
+        runInSession(fourth, "out.txt");
+        assertThat(count[0]).isEqualTo(3);
+    }
+
+    @Test
+    public void testRun_longChainDoesNotOverflowStack() {
+        for (int threadCount : new int[] { 1, 4 }) {
+            Workspace workspace = Workspace.builder().threadCount(threadCount).build();
+            int length = 100000;
+            int[] count = {0};
+            workspace.newCommandTask("t0", Collections.emptyList(), () -> count[0]++);
+            for (int i = 1; i < length; i++) {
+                workspace.newCommandTask("t" + i, Collections.singletonList("t" + (i - 1)), () -> count[0]++);
+            }
+
+            workspace.startSession();
+            workspace.run("t" + (length - 1));
+            workspace.endSession();
+
+            assertThat(count[0]).isEqualTo(length);
+        }
+    }
+
+    @Test
+    public void testFileTasks_longUpToDateChainDoesNotOverflowStack() {
+        FileSystem fs = Jimfs.newFileSystem(Configuration.unix());
+        Workspace workspace = Workspace.builder()
+                .fileSystem(fs)
+                .root("ROOT0", "/")
+                .build();
+        int length = 30000;
+        Runnable command = Mockito.mock(Runnable.class);
+        for (int i = 0; i < length; i++) {
+            writeString(fs, "/f" + i, "");
+            workspace.newFileTask("f" + i,
+                    i == 0 ? Collections.emptyList() : Collections.singletonList("f" + (i - 1)),
+                    command);
+        }
+
+        workspace.startSession();
+        assertThat(workspace.needsToRun("f" + (length - 1))).isFalse();
+        assertThat(workspace.explain("f" + (length - 2)).isPresent()).isFalse();
+        workspace.run("f" + (length - 1));
+        workspace.endSession();
+
+        verifyNoMoreInteractions(command);
+    }
+
+    @Test
+    public void testStartSession_reusesSessionStateAcrossSessions() throws IOException {
+        FileSystem fs = Jimfs.newFileSystem(Configuration.unix());
+        WorkspaceImpl workspace = (WorkspaceImpl) Workspace.builder()
+                .fileSystem(fs)
+                .root("ROOT0", "/")
+                .build();
+        writeString(fs, "/in.txt", "a");
+        workspace.newFileTask("out.txt", Collections.singletonList("in.txt"),
+                () -> writeString(fs, "/out.txt", readTextFile(fs, "/in.txt")));
+
+        workspace.startSession();
+        StalenessCheck check = workspace.getStalenessCheck();
+        workspace.run("out.txt");
+        assertThat(workspace.needsToRun("out.txt")).isFalse();
+        workspace.endSession();
+
+        writeString(fs, "/in.txt", "bb");
+        Path input = fs.getPath("/in.txt");
+        Files.setLastModifiedTime(input,
+                FileTime.fromMillis(Files.getLastModifiedTime(input).toMillis() + 3600 * 1000));
+        workspace.startSession();
+        assertThat(workspace.getStalenessCheck()).isSameAs(check);
+        assertThat(workspace.needsToRun("out.txt")).isTrue();
+        workspace.run("out.txt");
+        workspace.endSession();
+
+        assertThat(readTextFile(fs, "/out.txt")).isEqualTo("bb");
+    }
+
+    @Test
+    public void testStartSession_reportsCyclePath() {
+        Workspace workspace = Workspace.builder().build();
+        workspace.newCommandTask("a", Collections.singletonList("b"), null);
+        workspace.newCommandTask("b", Collections.singletonList("c"), null);
+        workspace.newCommandTask("c", Collections.singletonList("a"), null);
+        workspace.newCommandTask("d", Collections.singletonList("a"), null);
+
+        IllegalStateException e = assertThrows(IllegalStateException.class, workspace::startSession);
+        assertThat(e.getMessage()).contains("//./a -> //./b");
+        assertThat(e.getMessage()).contains("//./b -> //./c");
+        assertThat(e.getMessage()).contains("//./c -> //./a");
+        assertThat(e.getMessage()).doesNotContain("//./d");
+    }
+
+    @Test
+    public void testStartSession_detectsCycleAddedBetweenSessions() {
+        Workspace workspace = Workspace.builder().build();
+        workspace.newCommandTask("a", Collections.singletonList("b"), null);
+        workspace.startSession();
+        workspace.endSession();
+
+        workspace.newCommandTask("b", Collections.singletonList("c"), null);
+        workspace.startSession();
+        workspace.endSession();
+
+        workspace.newCommandTask("c", Collections.singletonList("a"), null);
+        IllegalStateException e = assertThrows(IllegalStateException.class, workspace::startSession);
+        assertThat(e.getMessage()).contains("//./a -> //./b");
+        assertThat(e.getMessage()).contains("//./b -> //./c");
+        assertThat(e.getMessage()).contains("//./c -> //./a");
+        assertThrows(IllegalStateException.class, workspace::startSession);
+    }
+
+    @Test
+    public void testStartSession_acceptsAcyclicTasksAddedInBatches() {
+        Random random = new Random(42);
+        Workspace workspace = Workspace.builder().build();
+        int taskCount = 500;
+        List<Integer> creationOrder = new ArrayList<>();
+        for (int i = 0; i < taskCount; i++) {
+            creationOrder.add(i);
+        }
+        Collections.shuffle(creationOrder, random);
+
+        for (int batch = 0; batch < 10; batch++) {
+            for (int index : creationOrder.subList(batch * 50, (batch + 1) * 50)) {
+                List<String> dependencies = new ArrayList<>();
+                for (int j = 0; j < 3 && index > 0; j++) {
+                    dependencies.add("t" + random.nextInt(index));
+                }
+                workspace.newCommandTask("t" + index, dependencies, null);
+            }
+            workspace.startSession();
+            workspace.endSession();
+        }
+
+        workspace.newCommandTask("p", Arrays.asList("t0", "q"), null);
+        workspace.startSession();
+        workspace.endSession();
+        workspace.newCommandTask("q", Arrays.asList("t" + (taskCount - 1), "p"), null);
+        assertThrows(IllegalStateException.class, workspace::startSession);
+    }
+
+    @Test
+    public void testTracer_recordsChecksExecutionsAndCriticalPath() {
+        FileSystem fs = Jimfs.newFileSystem(Configuration.unix());
+        writeString(fs, "/in.txt", "x");
+        TraceRecorder recorder = new TraceRecorder();
+        final Workspace workspace = Workspace.builder()
+                .fileSystem(fs)
+                .root("ROOT0", "/")
+                .threadCount(2)
+                .tracer(recorder)
+                .build();
+        workspace.newFileTask("a.txt", Collections.singletonList("in.txt"), () -> writeString(fs, "/a.txt", "a"));
+        workspace.newFileTask("b.txt", Collections.singletonList("a.txt"), () -> writeString(fs, "/b.txt", "b"));
+        workspace.newFileTask("c.txt", Collections.singletonList("in.txt"), () -> writeString(fs, "/c.txt", "c"));
+        workspace.newCommandTask("all", Arrays.asList("b.txt", "c.txt"), null);
+
+        runInSession(workspace, "all");
+
+        List<String> executed = new ArrayList<>();
+        for (TraceRecorder.Span span : recorder.getSpans()) {
+            if (span.isExecution()) {
+                executed.add(span.getTaskName());
+            } else if (span.getTaskName().equals("///a.txt")) {
+                assertThat(span.isStale()).isTrue();
+                assertThat(span.getReason().getKind()).isEqualTo(StaleReason.Kind.FILE_MISSING);
+                assertThat(span.getReason().getMessage()).contains("does not exists");
+            }
+        }
+        assertThat(executed).containsExactly("///a.txt", "///b.txt", "///c.txt", "///all");
+        List<String> criticalPath = new ArrayList<>();
+        recorder.getCriticalPath().forEach(span -> criticalPath.add(span.getTaskName()));
+        assertThat(criticalPath.get(criticalPath.size() - 1)).isEqualTo("///all");
+        assertThat(criticalPath.size()).isAtLeast(2);
+
+        StringWriter writer = new StringWriter();
+        recorder.writeChromeTrace(writer);
+        assertThat(writer.toString()).startsWith("{\"traceEvents\":[");
+        assertThat(writer.toString()).contains("\"name\":\"///b.txt\",\"cat\":\"run\"");
+    }
+
+    @Test
+    public void testParallelRun_startsCriticalPathFirst() {
+        FileSystem fs = Jimfs.newFileSystem(Configuration.unix());
+        final Workspace workspace = Workspace.builder()
+                .fileSystem(fs)
+                .root("ROOT0", "/")
+                .threadCount(2)
+                .build();
+        List<String> started = Collections.synchronizedList(new ArrayList<>());
+        List<String> dependencies = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            String name = "w" + i;
+            workspace.newCommandTask(name, Collections.emptyList(), () -> started.add(name));
+            dependencies.add(name);
+        }
+        for (int i = 0; i < 4; i++) {
+            String name = "c" + i;
+            workspace.newCommandTask(name,
+                    i == 0 ? Collections.emptyList() : Collections.singletonList("c" + (i - 1)),
+                    () -> started.add(name));
+        }
+        dependencies.add("c3");
+        workspace.newCommandTask("all", dependencies, null);
+
+        runInSession(workspace, "all");
+
+        assertThat(started.indexOf("c0")).isLessThan(2);
+        assertThat(((WorkspaceImpl) workspace).getBuildRecords().getDuration("///c0", -1)).isAtLeast(0L);
+    }
+
+    @Test
+    public void testWatch_rebuildsOnlyAffectedTasks() throws InterruptedException {
+        FileSystem fs = Jimfs.newFileSystem(Configuration.unix().toBuilder()
+                .setWatchServiceConfiguration(WatchServiceConfiguration.polling(10, TimeUnit.MILLISECONDS))
+                .build());
+        writeString(fs, "/a.in", "a");
+        writeString(fs, "/b.in", "b");
+        final Workspace workspace = Workspace.builder()
+                .fileSystem(fs)
+                .root("ROOT0", "/")
+                .build();
+        int[] aCount = {0};
+        int[] bCount = {0};
+        workspace.newFileTask("a.out", Collections.singletonList("a.in"), () -> {
+            aCount[0]++;
+            writeString(fs, "/a.out", readTextFile(fs, "/a.in"));
+        });
+        workspace.newFileTask("b.out", Collections.singletonList("b.in"), () -> {
+            bCount[0]++;
+            writeString(fs, "/b.out", readTextFile(fs, "/b.in"));
+        });
+        workspace.newCommandTask("all", Arrays.asList("a.out", "b.out"), null);
+
+        try (Watcher watcher = workspace.watch("all")) {
+            assertThat(workspace.isInSession()).isTrue();
+            assertThat(aCount[0]).isEqualTo(1);
+            assertThat(bCount[0]).isEqualTo(1);
+            assertThat(watcher.awaitChangesAndRebuild(100, TimeUnit.MILLISECONDS)).isFalse();
+
+            Path input = fs.getPath("/a.in");
+            writeString(fs, "/a.in", "aa");
+            try {
+                Files.setLastModifiedTime(input, FileTime.fromMillis(System.currentTimeMillis() + 1000));
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+            assertThat(watcher.awaitChangesAndRebuild(5, TimeUnit.SECONDS)).isTrue();
+            assertThat(aCount[0]).isEqualTo(2);
+            assertThat(bCount[0]).isEqualTo(1);
+            assertThat(readTextFile(fs, "/a.out")).isEqualTo("aa");
+        }
+        assertThat(workspace.isInSession()).isFalse();
+    }
+
+    @Test
+    public void testWatch_inputInDirectoryCreatedLater() throws Exception {
+        FileSystem fs = Jimfs.newFileSystem(Configuration.unix().toBuilder()
+                .setWatchServiceConfiguration(WatchServiceConfiguration.polling(10, TimeUnit.MILLISECONDS))
+                .build());
+        Files.createDirectories(fs.getPath("/out"));
+        final Workspace workspace = Workspace.builder()
+                .fileSystem(fs)
+                .root("ROOT0", "/")
+                .build();
+        workspace.newFileTask("out/a.txt", Collections.singletonList("src/gen/a.in"), () -> {
+            writeString(fs, "/out/a.txt", readTextFile(fs, "/src/gen/a.in"));
+        });
+
+        try (Watcher watcher = workspace.watch("out/a.txt")) {
+            assertThat(Files.exists(fs.getPath("/out/a.txt"))).isFalse();
+
+            Files.createDirectories(fs.getPath("/src/gen"));
+            writeString(fs, "/src/gen/a.in", "a");
+
+            boolean rebuilt = false;
+            for (int i = 0; i < 10 && !rebuilt; i++) {
+                rebuilt = watcher.awaitChangesAndRebuild(1, TimeUnit.SECONDS);
+            }
+            assertThat(rebuilt).isTrue();
+            assertThat(readTextFile(fs, "/out/a.txt")).isEqualTo("a");
+        }
+        assertThat(workspace.isInSession()).isFalse();
+    }
+
+    @Test
+    public void testWatch_watchesDependenciesMaterializedDuringWatch() throws Exception {
+        FileSystem fs = Jimfs.newFileSystem(Configuration.unix().toBuilder()
+                .setWatchServiceConfiguration(WatchServiceConfiguration.polling(10, TimeUnit.MILLISECONDS))
+                .build());
+        writeString(fs, "/x.in", "x");
+        writeString(fs, "/y.gen", "y");
+        final Workspace workspace = Workspace.builder()
+                .fileSystem(fs)
+                .root("ROOT0", "/")
+                .build();
+        boolean[] providerReady = {false};
+        workspace.addTaskProvider(resolvedTaskName -> {
+            if (!providerReady[0]) {
+                providerReady[0] = true;
+                throw new IllegalStateException("The provider is not ready yet.");
+            }
+            if (!resolvedTaskName.equals("///x.gen")) {
+                return false;
+            }
+            workspace.newFileTask(resolvedTaskName, Collections.singletonList("x.in"),
+                    () -> writeString(fs, "/x.gen", readTextFile(fs, "/x.in")));
+            return true;
+        });
+        workspace.newCommandTask("all", Arrays.asList("x.gen", "y.gen"), null);
+
+        try (Watcher watcher = workspace.watch("all")) {
+            assertThat(Files.exists(fs.getPath("/x.gen"))).isFalse();
+
+            touch(fs, "/y.gen", "yy");
+            assertThat(watcher.awaitChangesAndRebuild(5, TimeUnit.SECONDS)).isTrue();
+            assertThat(readTextFile(fs, "/x.gen")).isEqualTo("x");
+
+            touch(fs, "/x.in", "xx");
+            assertThat(watcher.awaitChangesAndRebuild(5, TimeUnit.SECONDS)).isTrue();
+            assertThat(readTextFile(fs, "/x.gen")).isEqualTo("xx");
+        }
+    }
+
+    private static void touch(FileSystem fs, String fileName, String content) throws IOException {
+        writeString(fs, fileName, content);
+        Files.setLastModifiedTime(fs.getPath(fileName), FileTime.fromMillis(System.currentTimeMillis() + 1000));
+    }
+
+    @Test
+    public void testAffectedTasks() {
+        final Workspace workspace = Workspace.builder()
+                .root("ROOT0", "/")
+                .build();
+        workspace.newFileTask("b", Collections.singletonList("a"), null);
+        workspace.newFileTask("c", Collections.singletonList("b"), null);
+        workspace.newFileTask("d", Arrays.asList("a", "c"), null);
+        workspace.newFileTask("e", Collections.singletonList("x"), null);
+
+        assertThat(workspace.getDependents("a")).containsExactly("///b", "///d");
+        assertThat(workspace.getAffectedTasks(Collections.singletonList("a")))
+                .containsExactly("///a", "///b", "///d", "///c").inOrder();
+        assertThat(workspace.getAffectedTasks(Collections.singletonList("a"), 0)).containsExactly("///a");
+        assertThat(workspace.getAffectedTasks(Collections.singletonList("b"), 1)).containsExactly("///b", "///c");
+        assertThat(workspace.getAffectedTasks(Arrays.asList("c", "x"))).containsExactly("///c", "///x", "///d", "///e");
+        assertThrows(IllegalArgumentException.class, () -> workspace.getDependents("y"));
+    }
+
+    @Test
+    public void testArtifactStore_restoresIdenticalOutputs() throws IOException {
+        FileSystem fs = Jimfs.newFileSystem(Configuration.unix());
+        LocalArtifactStore store = new LocalArtifactStore(fs.getPath("/cache"));
+        int[] count = {0};
+        for (String checkout : new String[] { "/one/", "/two/" }) {
+            Files.createDirectories(fs.getPath(checkout));
+            writeString(fs, checkout + "in.txt", "x");
+            final Workspace workspace = Workspace.builder()
+                    .fileSystem(fs)
+                    .root("ROOT0", checkout)
+                    .artifactStore(store)
+                    .build();
+            workspace.newFileTask("out.txt", Collections.singletonList("in.txt"),
+                    Action.of("copy-v1", () -> {
+                        count[0]++;
+                        writeString(fs, checkout + "out.txt", readTextFile(fs, checkout + "in.txt"));
+                    }));
+
+            runInSession(workspace, "out.txt");
+            assertThat(readTextFile(fs, checkout + "out.txt")).isEqualTo("x");
+            assertThat(count[0]).isEqualTo(1);
+            runInSession(workspace, "out.txt");
+            assertThat(count[0]).isEqualTo(1);
+        }
+
+        Files.createDirectories(fs.getPath("/three"));
+        writeString(fs, "/three/in.txt", "y");
+        final Workspace workspace = Workspace.builder()
+                .fileSystem(fs)
+                .root("ROOT0", "/three/")
+                .artifactStore(store)
+                .build();
+        workspace.newFileTask("out.txt", Collections.singletonList("in.txt"),
+                Action.of("copy-v1", () -> {
+                    count[0]++;
+                    writeString(fs, "/three/out.txt", readTextFile(fs, "/three/in.txt"));
+                }));
+        runInSession(workspace, "out.txt");
+        assertThat(count[0]).isEqualTo(2);
+        assertThat(readTextFile(fs, "/three/out.txt")).isEqualTo("y");
+    }
+
+    @Test
+    public void testArtifactStore_rewritingRestoredOutputKeepsEntry() throws IOException {
+        for (boolean hardLink : new boolean[] { false, true }) {
+            FileSystem fs = Jimfs.newFileSystem(Configuration.unix());
+            Path input = fs.getPath("/in.txt");
+            writeString(fs, "/in.txt", "v1");
+            final Workspace workspace = Workspace.builder()
+                    .fileSystem(fs)
+                    .root("ROOT0", "/")
+                    .artifactStore(new LocalArtifactStore(fs.getPath("/cache"), hardLink))
+                    .build();
+            int[] count = {0};
+            workspace.newFileTask("out.txt", Collections.singletonList("in.txt"),
+                    Action.of("copy-v1", () -> {
+                        count[0]++;
+                        writeString(fs, "/out.txt", readTextFile(fs, "/in.txt"));
+                    }));
+
+            runInSession(workspace, "out.txt");
+            Files.delete(fs.getPath("/out.txt"));
+            runInSession(workspace, "out.txt");
+            assertThat(count[0]).isEqualTo(1);
+
+            writeString(fs, "/in.txt", "v2");
+            Files.setLastModifiedTime(input, FileTime.fromMillis(System.currentTimeMillis() + 10000));
+            runInSession(workspace, "out.txt");
+            assertThat(count[0]).isEqualTo(2);
+            assertThat(readTextFile(fs, "/out.txt")).isEqualTo("v2");
+
+            writeString(fs, "/in.txt", "v1");
+            Files.setLastModifiedTime(input, FileTime.fromMillis(System.currentTimeMillis() + 20000));
+            Files.setLastModifiedTime(fs.getPath("/out.txt"), FileTime.fromMillis(0));
+            runInSession(workspace, "out.txt");
+            assertThat(count[0]).isEqualTo(2);
+            assertThat(readTextFile(fs, "/out.txt")).isEqualTo("v1");
+        }
+    }
+
+    @Test
+    public void testArtifactStore_actionSeesExistingOutput() throws IOException {
+        for (boolean hardLink : new boolean[] { false, true }) {
+            FileSystem fs = Jimfs.newFileSystem(Configuration.unix().toBuilder()
+                    .setAttributeViews("basic", "owner", "posix", "unix")
+                    .build());
+            Path input = fs.getPath("/in.txt");
+            Path output = fs.getPath("/out.txt");
+            writeString(fs, "/in.txt", "v1");
+            final Workspace workspace = Workspace.builder()
+                    .fileSystem(fs)
+                    .root("ROOT0", "/")
+                    .artifactStore(new LocalArtifactStore(fs.getPath("/cache"), hardLink))
+                    .build();
+            int[] count = {0};
+            workspace.newFileTask("out.txt", Collections.singletonList("in.txt"),
+                    Action.of("append-v1", () -> {
+                        count[0]++;
+                        String existing = Files.exists(output) ? readTextFile(fs, "/out.txt") : "";
+                        writeString(fs, "/out.txt", existing + readTextFile(fs, "/in.txt"));
+                    }));
+
+            runInSession(workspace, "out.txt");
+            writeString(fs, "/in.txt", "v2");
+            Files.setLastModifiedTime(input, FileTime.fromMillis(System.currentTimeMillis() + 10000));
+            runInSession(workspace, "out.txt");
+            assertThat(count[0]).isEqualTo(2);
+            assertThat(readTextFile(fs, "/out.txt")).isEqualTo("v1v2");
+
+            writeString(fs, "/in.txt", "v1");
+            Files.setLastModifiedTime(input, FileTime.fromMillis(System.currentTimeMillis() + 20000));
+            runInSession(workspace, "out.txt");
+            assertThat(count[0]).isEqualTo(2);
+            assertThat(readTextFile(fs, "/out.txt")).isEqualTo("v1");
+
+            writeString(fs, "/in.txt", "v3");
+            Files.setLastModifiedTime(input, FileTime.fromMillis(System.currentTimeMillis() + 30000));
+            runInSession(workspace, "out.txt");
+            assertThat(count[0]).isEqualTo(3);
+            assertThat(readTextFile(fs, "/out.txt")).isEqualTo("v1v3");
+
+            Files.delete(output);
+            writeString(fs, "/in.txt", "v1");
+            Files.setLastModifiedTime(input, FileTime.fromMillis(System.currentTimeMillis() + 40000));
+            runInSession(workspace, "out.txt");
+            assertThat(count[0]).isEqualTo(3);
+            assertThat(readTextFile(fs, "/out.txt")).isEqualTo("v1");
+        }
+    }
+
+    @Test
+    public void testTaskProvider_probesEachPlaceholderOnceUntilReplaced() {
+        FileSystem fs = Jimfs.newFileSystem(Configuration.unix());
+        final Workspace workspace = Workspace.builder()
+                .fileSystem(fs)
+                .root("ROOT0", "/")
+                .build();
+        List<String> probed = new ArrayList<>();
+        workspace.addTaskProvider(resolvedTaskName -> {
+            probed.add(resolvedTaskName);
+            if (!resolvedTaskName.startsWith("///gen")) {
+                return false;
+            }
+            workspace.newFileTask(resolvedTaskName, Collections.emptyList(),
+                    () -> writeString(fs, Workspace.getFileName(resolvedTaskName), "gen"));
+            return true;
+        });
+        writeString(fs, "/src.txt", "src");
+        workspace.newFileTask("a.txt", Collections.singletonList("src.txt"),
+                () -> writeString(fs, "/a.txt", readTextFile(fs, "/src.txt")));
+
+        runInSession(workspace, "a.txt");
+        workspace.startSession();
+        assertThat(workspace.needsToRun("a.txt")).isFalse();
+        workspace.run("a.txt");
+        workspace.endSession();
+        assertThat(probed).containsExactly("///src.txt");
+
+        workspace.newFileTask("src.txt", Collections.singletonList("gen.txt"),
+                () -> writeString(fs, "/src.txt", readTextFile(fs, "/gen.txt")));
+        runInSession(workspace, "a.txt");
+        assertThat(probed).containsExactly("///src.txt", "///gen.txt").inOrder();
+        assertThat(readTextFile(fs, "/a.txt")).isEqualTo("gen");
+    }
+
+    @Test
+    public void testMultiIndexFileTasks_materializesOnlyRequestedClosure() {
+        FileSystem fs = Jimfs.newFileSystem(Configuration.unix());
+        final Workspace workspace = Workspace.builder()
+                .fileSystem(fs)
+                .root("ROOT0", "/")
+                .build();
+        List<String> created = new ArrayList<>();
+        MultiIndexFileTasks cells = new MultiIndexFileTasks(workspace, "/ROOT0/sweep", "cells",
+                new int[] { 200, 200, 200 }, false) {
+            @Override
+            public String getFileTaskName(int... index) {
+                return "/ROOT0/cell_" + index[0] + "_" + index[1] + "_" + index[2] + ".txt";
+            }
+
+            @Override
+            public int[] getIndex(String resolvedFileTaskName) {
+                if (!resolvedFileTaskName.startsWith("///cell_") || !resolvedFileTaskName.endsWith(".txt")) {
+                    return null;
+                }
+                String[] parts = resolvedFileTaskName.substring(8, resolvedFileTaskName.length() - 4).split("_");
+                return Arrays.stream(parts).mapToInt(Integer::parseInt).toArray();
+            }
+
+            @Override
+            public void createFileTask(int... index) {
+                String name = getFileTaskName(index);
+                List<String> dependencies = index[2] == 0
+                        ? Collections.emptyList()
+                        : Collections.singletonList(getFileTaskName(index[0], index[1], index[2] - 1));
+                created.add(name);
+                workspace.newFileTask(name, dependencies,
+                        () -> writeString(fs, Workspace.getFileName(workspace.resolveName(name)), "cell"));
+            }
+        };
+        workspace.newFileTask("report.txt", Collections.singletonList(cells.getFileTaskName(1, 2, 3)),
+                () -> writeString(fs, "/report.txt", "report"));
+        assertThat(created).isEmpty();
+        assertThat(cells.getArity()).isEqualTo(3);
+        assertThat(cells.getFileTaskNames()).hasSize(200 * 200 * 200);
+
+        runInSession(workspace, "report.txt");
+
+        assertThat(created).containsExactly(
+                "/ROOT0/cell_1_2_3.txt", "/ROOT0/cell_1_2_2.txt", "/ROOT0/cell_1_2_1.txt", "/ROOT0/cell_1_2_0.txt");
+        assertThat(readTextFile(fs, "/cell_1_2_0.txt")).isEqualTo("cell");
+        assertThat(readTextFile(fs, "/report.txt")).isEqualTo("report");
+
+        workspace.startSession();
+        assertThat(workspace.needsToRun(cells.getFileTaskName(5, 5, 0))).isTrue();
+        assertThat(workspace.needsToRun("report.txt")).isFalse();
+        workspace.endSession();
+        assertThat(created).hasSize(5);
+        assertThat(workspace.getTaskNames()).hasSize(6);
+    }
+
+    @Test
+    public void testExplain() {
+        FileSystem fs = Jimfs.newFileSystem(Configuration.unix());
+        writeString(fs, "/in.txt", "x");
+        writeString(fs, "/out.txt", "o");
+        final Workspace workspace = Workspace.builder()
+                .fileSystem(fs)
+                .root("ROOT0", "/")
+                .build();
+        workspace.newFileTask("mid.txt", Collections.singletonList("in.txt"), () -> writeString(fs, "/mid.txt", "m"));
+        workspace.newFileTask("out.txt", Collections.singletonList("mid.txt"), () -> writeString(fs, "/out.txt", "o"));
+        workspace.newCommandTask("all", Collections.singletonList("out.txt"), null);
+
+        workspace.startSession();
+        assertThat(workspace.explain("in.txt").isPresent()).isFalse();
+        assertThat(workspace.explain("mid.txt").get())
+                .isEqualTo(new StaleReason(StaleReason.Kind.FILE_MISSING, "///mid.txt", null));
+        assertThat(workspace.explain("out.txt").get())
+                .isEqualTo(new StaleReason(StaleReason.Kind.DEPENDENCY_STALE, "///out.txt", "///mid.txt"));
+        assertThat(workspace.explain("all").get().getKind()).isEqualTo(StaleReason.Kind.COMMAND);
+        workspace.run("out.txt");
+        assertThat(workspace.explain("out.txt").isPresent()).isFalse();
+        workspace.endSession();
+    }
+
+    @Test
+    public void testPlanDoesNotRunOrChangeSessionState() {
+        FileSystem fs = Jimfs.newFileSystem(Configuration.unix());
+        writeString(fs, "/in.txt", "x");
+        AtomicInteger runCount = new AtomicInteger(0);
+        final Workspace workspace = Workspace.builder()
+                .fileSystem(fs)
+                .root("ROOT0", "/")
+                .build();
+        workspace.newFileTask("a.txt", Collections.singletonList("in.txt"), () -> {
+            runCount.incrementAndGet();
+            writeString(fs, "/a.txt", "a");
+        });
+        workspace.newFileTask("b.txt", Collections.singletonList("in.txt"), () -> {
+            runCount.incrementAndGet();
+            writeString(fs, "/b.txt", "b");
+        });
+        workspace.newFileTask("c.txt", Arrays.asList("a.txt", "b.txt"), () -> {
+            runCount.incrementAndGet();
+            writeString(fs, "/c.txt", "c");
+        });
+
+        BuildPlan plan = workspace.plan(Collections.singletonList("c.txt"));
+        assertThat(runCount.get()).isEqualTo(0);
+        assertThat(plan.isUpToDate()).isFalse();
+        assertThat(plan.getSteps().stream().map(BuildPlan.Step::getTaskName).toArray())
+                .asList().containsExactly("///a.txt", "///b.txt", "///c.txt").inOrder();
+        assertThat(plan.getLevels()).hasSize(2);
+        assertThat(plan.getMaxParallelism()).isEqualTo(2);
+        assertThat(plan.getSteps().get(2).getReason())
+                .isEqualTo(new StaleReason(StaleReason.Kind.FILE_MISSING, "///c.txt", null));
+
+        workspace.startSession();
+        assertThat(workspace.plan(Arrays.asList("a.txt", "c.txt")).getSteps()).hasSize(3);
+        assertThat(workspace.needsToRun("c.txt")).isTrue();
+        workspace.run("c.txt");
+        assertThat(runCount.get()).isEqualTo(3);
+        assertThat(workspace.plan(Collections.singletonList("c.txt")).isUpToDate()).isTrue();
+        workspace.endSession();
+    }
+
+    @Test
+    public void testPlan_detectsCycleOutOfSession() {
+        FileSystem fs = Jimfs.newFileSystem(Configuration.unix());
+        final Workspace workspace = Workspace.builder()
+                .fileSystem(fs)
+                .root("ROOT0", "/")
+                .build();
+        workspace.newFileTask("x.txt", Collections.singletonList("y.txt"), null);
+        workspace.newFileTask("y.txt", Collections.singletonList("x.txt"), null);
+
+        IllegalStateException e = assertThrows(IllegalStateException.class,
+                () -> workspace.plan(Collections.singletonList("x.txt")));
+        assertThat(e.getMessage()).contains("///x.txt -> ///y.txt");
+        assertThrows(IllegalStateException.class, () -> workspace.plan(Collections.singletonList("x.txt")));
+        assertThrows(IllegalStateException.class, workspace::startSession);
+    }
+
+    @Test
+    public void testCompactTasks_exposeNamesDependenciesAndImplicitPlaceholders() {
+        FileSystem fs = Jimfs.newFileSystem(Configuration.unix());
+        Workspace workspace = Workspace.builder()
+                .fileSystem(fs)
+                .root("ROOT0", "/")
+                .build();
+        FileTask task = workspace.newFileTask("out.txt", Arrays.asList("in.txt", "data/other.txt"), null);
+
+        assertThat(task.getName()).isEqualTo("///out.txt");
+        assertThat(task.getDependencies()).containsExactly("///in.txt", "///data/other.txt").inOrder();
+        assertThat(workspace.getTaskNames()).containsExactly("///in.txt", "///data/other.txt", "///out.txt");
+        assertThat(workspace.getTaskNames().contains("///in.txt")).isTrue();
+        WorkspaceImpl workspaceImpl = (WorkspaceImpl) workspace;
+        assertThat(workspaceImpl.getTask("in.txt")).isInstanceOf(PlaceholderTask.class);
+        assertThat(workspaceImpl.getTask("in.txt").getName()).isEqualTo("///in.txt");
+        assertThat(workspace.canRun("in.txt")).isFalse();
+
+        workspace.newFileTask("in.txt", Collections.emptyList(), null);
+        assertThat(workspaceImpl.getTask("in.txt")).isInstanceOf(FileTask.class);
+        assertThat(workspace.getTaskNames()).hasSize(3);
+    }
+
+    @Test
+    public void testGraphBuilder_publishesBatchInOneStep() {
+        FileSystem fs = Jimfs.newFileSystem(Configuration.unix());
+        writeString(fs, "/in.txt", "x");
+        Workspace workspace = Workspace.builder()
+                .fileSystem(fs)
+                .root("ROOT0", "/")
+                .build();
+        workspace.newFileTask("existing.txt", Collections.emptyList(), () -> writeString(fs, "/existing.txt", "e"));
+
+        GraphBuilder builder = workspace.newGraphBuilder();
+        builder.commandTask("all", Arrays.asList("b.txt", "existing.txt"), null)
+                .fileTask("b.txt", Collections.singletonList("a.txt"), () -> writeString(fs, "/b.txt", "b"))
+                .fileTask("a.txt", Collections.singletonList("in.txt"), () -> writeString(fs, "/a.txt", "a"))
+                .placeholderTask("extra.txt");
+        assertThat(builder.size()).isEqualTo(3);
+        assertThat(workspace.taskExists("a.txt")).isFalse();
+        builder.publish();
+
+        assertThat(builder.size()).isEqualTo(0);
+        assertThat(workspace.getTaskNames()).containsExactly(
+                "///existing.txt", "///extra.txt", "///all", "///b.txt", "///a.txt", "///in.txt");
+        assertThat(workspace.canRun("in.txt")).isFalse();
+        runInSession(workspace, "all");
+        assertThat(readTextFile(fs, "/b.txt")).isEqualTo("b");
+        assertThat(readTextFile(fs, "/existing.txt")).isEqualTo("e");
+
+        builder.fileTask("c.txt", Collections.emptyList(), null)
+                .fileTask("c.txt", Collections.emptyList(), null);
+        assertThrows(IllegalArgumentException.class, builder::publish);
+        assertThat(workspace.taskExists("c.txt")).isFalse();
+
+        GraphBuilder duplicate = workspace.newGraphBuilder();
+        duplicate.fileTask("a.txt", Collections.emptyList(), null);
+        assertThrows(IllegalArgumentException.class, duplicate::publish);
+        assertThat(duplicate.size()).isEqualTo(0);
+        duplicate.fileTask("d.txt", Collections.singletonList("a.txt"), null).publish();
+        assertThat(workspace.taskExists("d.txt")).isTrue();
+    }
+}